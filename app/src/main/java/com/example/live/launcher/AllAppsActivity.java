@@ -1,7 +1,11 @@
 package com.example.live.launcher;
 
+import android.content.ActivityNotFoundException;
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.view.View;
@@ -14,20 +18,49 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.example.live.R;
 import com.google.android.material.textfield.TextInputEditText;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class AllAppsActivity extends AppCompatActivity {
 
-    private List<AppInfo> allApps;
+    // Long enough to coalesce a burst of keystrokes, short enough to feel instant.
+    private static final long SEARCH_DEBOUNCE_MS = 80L;
+
+    // The shared catalog (or the part loaded so far); null until the first one arrives.
+    private AppCatalog catalog;
     private AppsAdapter adapter;
+    private View loading;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "app-search"));
+    // Each scheduled query takes a new generation; results from older generations are dropped.
+    private final AtomicInteger searchGeneration = new AtomicInteger();
+    private Future<?> pendingSearch;
+    private String pendingQuery = "";
+
+    private final PackageEvents.Listener catalogListener = new PackageEvents.Listener() {
+        @Override
+        public void onCatalogChanged() {
+            // The repository already holds the patched catalog; rerun the query against it.
+            AppCatalog patched = AppRepository.peekCatalog();
+            if (patched != null) showCatalog(patched);
+        }
+    };
+
+    private final Runnable runSearch = new Runnable() {
+        @Override
+        public void run() {
+            startSearch(pendingQuery);
+        }
+    };
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_all_apps);
-
-        allApps = AppRepository.getLaunchableApps(this);
+        loading = findViewById(R.id.all_apps_loading);
 
         RecyclerView rv = findViewById(R.id.all_apps_list);
         rv.setLayoutManager(new LinearLayoutManager(this));
@@ -35,8 +68,8 @@ public final class AllAppsActivity extends AppCompatActivity {
         adapter = new AppsAdapter(new AppsAdapter.Listener() {
             @Override
             public void onAppClicked(AppInfo app) {
-                Intent launch = AppRepository.getLaunchIntent(AllAppsActivity.this, app.packageName);
-                if (launch != null) startActivity(launch);
+                LaunchHistoryStore.get(AllAppsActivity.this).recordLaunch(app.packageName);
+                launchApp(app);
             }
 
             @Override
@@ -46,12 +79,26 @@ public final class AllAppsActivity extends AppCompatActivity {
         }, false);
         rv.setAdapter(adapter);
 
-        adapter.submit(allApps);
+        // Nothing here may scan PackageManager or build the index: draw the cached catalog in A-Z
+        // order (or the loading indicator) now, and let the search thread rank it.
+        AppCatalog cached = AppRepository.peekCatalog();
+        if (cached != null) {
+            adapter.submit(cached, cached.allRows());
+            showCatalog(cached);
+        }
+        AppRepository.loadAsync(this, new AppRepository.LoadCallback() {
+            @Override
+            public void onCatalogLoaded(AppCatalog loaded, boolean complete) {
+                if (isDestroyed()) return;
+                showCatalog(loaded);
+            }
+        });
+        PackageEvents.addListener(catalogListener);
 
         final TextInputEditText search = findViewById(R.id.search_input);
         search.addTextChangedListener(new TextWatcher() {
             @Override public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
-            @Override public void onTextChanged(CharSequence s, int start, int before, int count) { filter(s); }
+            @Override public void onTextChanged(CharSequence s, int start, int before, int count) { scheduleSearch(s); }
             @Override public void afterTextChanged(Editable s) {}
         });
 
@@ -63,17 +110,72 @@ public final class AllAppsActivity extends AppCompatActivity {
         });
     }
 
-    private void filter(CharSequence query) {
-        String q = query == null ? "" : query.toString().trim().toLowerCase();
-        if (q.isEmpty()) {
-            adapter.submit(allApps);
-            return;
-        }
+    @Override
+    protected void onPause() {
+        super.onPause();
+        LaunchHistoryStore.get(this).flush();
+        SecurePrefs.flush();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        PackageEvents.removeListener(catalogListener);
+        mainHandler.removeCallbacks(runSearch);
+        searchGeneration.incrementAndGet();
+        searchExecutor.shutdownNow();
+    }
+
+    private void scheduleSearch(CharSequence query) {
+        pendingQuery = query == null ? "" : query.toString();
+        mainHandler.removeCallbacks(runSearch);
+        mainHandler.postDelayed(runSearch, SEARCH_DEBOUNCE_MS);
+    }
+
+    /** Switches to a newer (or more complete) catalog and reruns the current query on it. */
+    private void showCatalog(AppCatalog next) {
+        loading.setVisibility(View.GONE);
+        if (next == catalog) return;
+        catalog = next;
+        startSearch(pendingQuery);
+    }
+
+    private void startSearch(final String query) {
+        // Typing before anything has loaded is fine; the query runs once a catalog arrives.
+        final AppCatalog current = catalog;
+        if (current == null) return;
+
+        final int generation = searchGeneration.incrementAndGet();
+        if (pendingSearch != null) pendingSearch.cancel(false);
+
+        final Context appContext = getApplicationContext();
+        pendingSearch = searchExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != searchGeneration.get()) return;
+                // The index and the launch history are both loaded here, not on the main thread.
+                LaunchHistoryStore.Ranker ranker = LaunchHistoryStore.get(appContext).ranker();
+                final int[] rows = AppSearchIndex.forCatalog(current).search(query, ranker);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // A newer keystroke, catalog (or onDestroy) superseded this query.
+                        if (generation != searchGeneration.get()) return;
+                        adapter.submit(current, rows);
+                    }
+                });
+            }
+        });
+    }
 
-        List<AppInfo> out = new ArrayList<>();
-        for (AppInfo app : allApps) {
-            if (app.label.toLowerCase().contains(q)) out.add(app);
+    private void launchApp(AppInfo app) {
+        try {
+            startActivity(LaunchResolver.launchIntentFor(app));
+        } catch (ActivityNotFoundException anf) {
+            // Stale component (e.g. app updated and renamed its activity): resolve afresh.
+            LaunchResolver.invalidate(app.packageName);
+            Intent launch = AppRepository.getLaunchIntent(this, app.packageName);
+            if (launch != null) startActivity(launch);
         }
-        adapter.submit(out);
     }
 }
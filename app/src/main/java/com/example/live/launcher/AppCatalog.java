@@ -0,0 +1,130 @@
+package com.example.live.launcher;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable, display-ordered list of launcher entries, stored as parallel arrays.
+ *
+ * One instance is shared by every screen; adapters and the search index refer to entries by row
+ * index. A package change produces a new catalog rather than mutating this one. Icons are not
+ * held here; {@link IconCache} resolves them from a row's component and version.
+ */
+public final class AppCatalog {
+
+    static final AppCatalog EMPTY = new AppCatalog(0, false);
+
+    private final String[] packageNames;
+    private final String[] classNames;
+    private final String[] labels;
+    private final long[] versionCodes;
+    private final long[] lastUpdateTimes;
+    // Label sort keys (CollationKey.toByteArray()) in the locale the catalog was built for, so a
+    // rescan or a package change only computes keys for new labels; bytes rather than CollationKey
+    // objects, which also hold the label and a wrapper each. Null when the builder had none.
+    @Nullable private final byte[][] sortKeys;
+
+    private AppCatalog(int size, boolean withSortKeys) {
+        packageNames = new String[size];
+        classNames = new String[size];
+        labels = new String[size];
+        versionCodes = new long[size];
+        lastUpdateTimes = new long[size];
+        sortKeys = withSortKeys ? new byte[size][] : null;
+    }
+
+    /** Builds a catalog from entries that are already in display order. */
+    @NonNull
+    static AppCatalog of(@NonNull List<AppInfo> sortedApps) {
+        return of(sortedApps, null);
+    }
+
+    /** As {@link #of(List)}, keeping each entry's label sort key alongside it. */
+    @NonNull
+    static AppCatalog of(@NonNull List<AppInfo> sortedApps, @Nullable List<byte[]> sortKeys) {
+        AppCatalog c = new AppCatalog(sortedApps.size(), sortKeys != null);
+        for (int i = 0; i < sortedApps.size(); i++) {
+            AppInfo app = sortedApps.get(i);
+            c.packageNames[i] = app.packageName;
+            c.classNames[i] = app.className;
+            c.labels[i] = app.label;
+            c.versionCodes[i] = app.versionCode;
+            c.lastUpdateTimes[i] = app.lastUpdateTime;
+            if (sortKeys != null) c.sortKeys[i] = sortKeys.get(i);
+        }
+        return c;
+    }
+
+    public int size() {
+        return packageNames.length;
+    }
+
+    @NonNull
+    public String packageName(int row) {
+        return packageNames[row];
+    }
+
+    @NonNull
+    public String className(int row) {
+        return classNames[row];
+    }
+
+    @NonNull
+    public String label(int row) {
+        return labels[row];
+    }
+
+    public long versionCode(int row) {
+        return versionCodes[row];
+    }
+
+    public long lastUpdateTime(int row) {
+        return lastUpdateTimes[row];
+    }
+
+    @Nullable
+    byte[] sortKey(int row) {
+        return sortKeys == null ? null : sortKeys[row];
+    }
+
+    /** A standalone copy of one row, for handing to launch and history code. */
+    @NonNull
+    public AppInfo get(int row) {
+        return new AppInfo(packageNames[row], classNames[row], labels[row], versionCodes[row], lastUpdateTimes[row]);
+    }
+
+    /** Every row, in display order. */
+    @NonNull
+    public int[] allRows() {
+        int[] rows = new int[size()];
+        for (int i = 0; i < rows.length; i++) rows[i] = i;
+        return rows;
+    }
+
+    /** Rows whose package is in the set, in display order. */
+    @NonNull
+    public int[] rowsForPackages(@NonNull Set<String> packages) {
+        int[] rows = new int[size()];
+        int n = 0;
+        for (int i = 0; i < packageNames.length; i++) {
+            if (packages.contains(packageNames[i])) rows[n++] = i;
+        }
+        return Arrays.copyOf(rows, n);
+    }
+
+    /** Row by AppInfo.componentKey(); built on demand and not retained. */
+    @NonNull
+    Map<String, Integer> indexByComponent() {
+        Map<String, Integer> out = new HashMap<>(size() * 2);
+        for (int i = 0; i < packageNames.length; i++) {
+            out.put(packageNames[i] + "/" + classNames[i], i);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.live.launcher;
+
+import android.content.Context;
+import android.util.AtomicFile;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * On-disk snapshot of the launcher app catalog.
+ *
+ * Each entry is keyed by package + activity and remembers the package's lastUpdateTime, so the
+ * repository only has to go back to PackageManager for labels of packages that changed.
+ * Labels are localized, so the snapshot also records the locale it was built for. They are not
+ * sensitive, so this lives in a plain private file rather than {@link SecurePrefs}.
+ */
+final class AppCatalogStore {
+
+    private static final String FILE_NAME = "app_catalog.bin";
+    private static final int FORMAT_VERSION = 1;
+
+    static final class Entry {
+        final String packageName;
+        final String className;
+        final long lastUpdateTime;
+        final String label;
+
+        Entry(@NonNull String packageName, @NonNull String className, long lastUpdateTime, @NonNull String label) {
+            this.packageName = packageName;
+            this.className = className;
+            this.lastUpdateTime = lastUpdateTime;
+            this.label = label;
+        }
+
+        String componentKey() {
+            return packageName + "/" + className;
+        }
+    }
+
+    private AppCatalogStore() {}
+
+    /** Returns the last snapshot keyed by component, or an empty map if none/corrupt/other locale. */
+    @NonNull
+    static Map<String, Entry> read(@NonNull Context context, @NonNull String localeTag) {
+        Map<String, Entry> out = new HashMap<>();
+        AtomicFile file = file(context);
+        DataInputStream in = null;
+        try {
+            FileInputStream fis = file.openRead();
+            in = new DataInputStream(new BufferedInputStream(fis));
+            if (in.readInt() != FORMAT_VERSION) return out;
+            if (!localeTag.equals(in.readUTF())) return out;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String pkg = in.readUTF();
+                String cls = in.readUTF();
+                long updated = in.readLong();
+                String label = in.readUTF();
+                Entry e = new Entry(pkg, cls, updated, label);
+                out.put(e.componentKey(), e);
+            }
+            return out;
+        } catch (Throwable t) {
+            // Missing or partially written snapshot: treat as a cold start.
+            out.clear();
+            return out;
+        } finally {
+            if (in != null) {
+                try { in.close(); } catch (Throwable ignored) {}
+            }
+        }
+    }
+
+    static void write(@NonNull Context context, @NonNull String localeTag, @NonNull AppCatalog catalog) {
+        AtomicFile file = file(context);
+        FileOutputStream fos = null;
+        try {
+            fos = file.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(localeTag);
+            out.writeInt(catalog.size());
+            for (int i = 0; i < catalog.size(); i++) {
+                out.writeUTF(catalog.packageName(i));
+                out.writeUTF(catalog.className(i));
+                out.writeLong(catalog.lastUpdateTime(i));
+                out.writeUTF(catalog.label(i));
+            }
+            out.flush();
+            file.finishWrite(fos);
+        } catch (Throwable t) {
+            if (fos != null) file.failWrite(fos);
+        }
+    }
+
+    private static AtomicFile file(@NonNull Context context) {
+        return new AtomicFile(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+    }
+}
@@ -1,15 +1,26 @@
 package com.example.live.launcher;
 
-import android.graphics.drawable.Drawable;
-
+/**
+ * One launcher entry, as handed to launch and history code. Lists of entries are held in an
+ * {@link AppCatalog}; icons are resolved through {@link IconCache}.
+ */
 public final class AppInfo {
     public final String packageName;
+    public final String className;
     public final String label;
-    public final Drawable icon;
+    public final long versionCode;
+    public final long lastUpdateTime;
 
-    public AppInfo(String packageName, String label, Drawable icon) {
+    public AppInfo(String packageName, String className, String label, long versionCode, long lastUpdateTime) {
         this.packageName = packageName;
+        this.className = className;
         this.label = label;
-        this.icon = icon;
+        this.versionCode = versionCode;
+        this.lastUpdateTime = lastUpdateTime;
+    }
+
+    /** Identity of the launcher entry: one package may expose several launcher activities. */
+    public String componentKey() {
+        return packageName + "/" + className;
     }
 }
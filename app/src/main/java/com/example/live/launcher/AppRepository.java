@@ -2,45 +2,512 @@ package com.example.live.launcher;
 
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
+import android.os.Handler;
+import android.os.Looper;
 
+import androidx.core.content.pm.PackageInfoCompat;
+
+import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public final class AppRepository {
 
+    // Guards publishing only; catalogs are built outside it and readers never take it.
+    private static final Object LOCK = new Object();
+
+    // The shared catalog with the locale it was built for; replaced whole under LOCK, read without
+    // it. Null until the first scan.
+    private static volatile Published published;
+    // True while PackageEvents patches the catalog, so a full rescan is only needed once.
+    private static volatile boolean trackingPackageEvents;
+
+    // Labels load on up to one thread per core; idle threads exit after the first load.
+    private static final int LOADER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final ThreadPoolExecutor LOADER = new ThreadPoolExecutor(
+            LOADER_THREADS, LOADER_THREADS, 5L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            r -> new Thread(r, "app-loader"));
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+    // Roughly one screen of rows in the app lists.
+    private static final int FIRST_SCREEN_APPS = 16;
+    // Below this, splitting costs more than it saves.
+    private static final int MIN_CHUNK = 8;
+    // Update time of rows whose label could not be loaded; never matches a package, so the next
+    // load asks for the label again instead of keeping the fallback.
+    private static final long LABEL_FAILED = -1L;
+
+    static {
+        LOADER.allowCoreThreadTimeOut(true);
+    }
+
+    private static final class Published {
+        final AppCatalog catalog;
+        final String localeTag;
+        // Not thread-safe; each build works on its own clone.
+        final Collator collator;
+
+        Published(AppCatalog catalog, String localeTag, Collator collator) {
+            this.catalog = catalog;
+            this.localeTag = localeTag;
+            this.collator = collator;
+        }
+    }
+
+    // A row while a catalog is being built; the catalog keeps the keys for the next rebuild.
+    private static final class Row {
+        final AppInfo app;
+        final byte[] key;
+
+        Row(AppInfo app, byte[] key) {
+            this.app = app;
+            this.key = key;
+        }
+    }
+
+    private static final Comparator<Row> BY_SORT_KEY = new Comparator<Row>() {
+        @Override
+        public int compare(Row a, Row b) {
+            // Collation key bytes order like the keys themselves when compared unsigned.
+            byte[] x = a.key;
+            byte[] y = b.key;
+            int n = Math.min(x.length, y.length);
+            for (int i = 0; i < n; i++) {
+                int d = (x[i] & 0xFF) - (y[i] & 0xFF);
+                if (d != 0) return d;
+            }
+            return x.length - y.length;
+        }
+    };
+
     private AppRepository() {}
 
-    public static List<AppInfo> getLaunchableApps(Context context) {
-        PackageManager pm = context.getPackageManager();
+    /** Receives catalog loads on the main thread; see {@link #loadAsync(Context, LoadCallback)}. */
+    public interface LoadCallback {
+        /** Apps resolved so far, sorted; the last call has {@code complete} set and the full catalog. */
+        void onCatalogLoaded(AppCatalog catalog, boolean complete);
+    }
+
+    /** Returns the shared catalog, scanning PackageManager only when it is not being kept current. */
+    public static AppCatalog getCatalog(Context context) {
+        return load(context.getApplicationContext(), null);
+    }
+
+    /** The shared catalog if one has been built for the current locale, without any PackageManager work. */
+    public static AppCatalog peekCatalog() {
+        Published p = published;
+        return p != null && Locale.getDefault().toLanguageTag().equals(p.localeTag) ? p.catalog : null;
+    }
+
+    /**
+     * Loads the catalog on a background thread. When labels have to come from PackageManager
+     * (first run, after a reboot or a locale change) the list is delivered in growing chunks,
+     * the first one as soon as a screen's worth of apps is ready.
+     */
+    public static void loadAsync(Context context, final LoadCallback callback) {
+        final Context appContext = context.getApplicationContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final AppCatalog loaded = load(appContext, callback);
+                MAIN.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onCatalogLoaded(loaded, true);
+                    }
+                });
+            }
+        }, "app-catalog").start();
+    }
+
+    private static AppCatalog load(Context appContext, LoadCallback progress) {
+        PackageManager pm = appContext.getPackageManager();
+
+        Locale locale = Locale.getDefault();
+        String localeTag = locale.toLanguageTag();
+        Published current = published;
+        if (trackingPackageEvents && current != null && localeTag.equals(current.localeTag)) {
+            return current.catalog;
+        }
 
         Intent intent = new Intent(Intent.ACTION_MAIN);
         intent.addCategory(Intent.CATEGORY_LAUNCHER);
 
         List<ResolveInfo> resolveInfos = pm.queryIntentActivities(intent, 0);
-        List<AppInfo> apps = new ArrayList<>(resolveInfos.size());
+        Map<String, PackageInfo> packages = installedPackages(pm);
+
+        // Built against a snapshot and published only if no other load or patch got there first;
+        // otherwise rebuilt against the newer catalog, which then usually has nothing to do.
+        while (true) {
+            Published base = published;
+            // Labels held in memory for another locale are not reused.
+            boolean sameLocale = base != null && localeTag.equals(base.localeTag);
+            Collator shared = sameLocale ? base.collator : labelCollator(locale);
+            Collator collator = (Collator) shared.clone();
+
+            // Labels for unchanged packages come from the current catalog, or else from disk.
+            AppCatalog prev = sameLocale ? base.catalog : null;
+            Map<String, Integer> prevRows = prev == null ? null : prev.indexByComponent();
+            Map<String, AppCatalogStore.Entry> disk = prev == null ? AppCatalogStore.read(appContext, localeTag) : null;
+
+            int n = resolveInfos.size();
+            // Resolve order; LaunchResolver relies on it.
+            AppInfo[] resolved = new AppInfo[n];
+            // The outdated label of a miss, if any; orders the first chunk and stands in on failure.
+            String[] previous = new String[n];
+            int[] misses = new int[n];
+            int missCount = 0;
+            List<Row> known = new ArrayList<>(n);
+            boolean changed = prev == null || prev.size() != n;
+
+            for (int i = 0; i < n; i++) {
+                ResolveInfo ri = resolveInfos.get(i);
+                String packageName = ri.activityInfo.packageName;
+                String className = ri.activityInfo.name;
+                PackageInfo pi = packages == null ? null : packages.get(packageName);
+                long updated = pi == null ? 0L : pi.lastUpdateTime;
+                long versionCode = pi == null ? 0L : PackageInfoCompat.getLongVersionCode(pi);
+                String key = packageName + "/" + className;
+
+                String label = null;
+                byte[] sortKey = null;
+                if (prevRows != null) {
+                    Integer row = prevRows.get(key);
+                    if (packages == null && row != null) {
+                        // No package info at all: trust what the catalog already has.
+                        updated = prev.lastUpdateTime(row);
+                        versionCode = prev.versionCode(row);
+                    }
+                    if (row != null && prev.lastUpdateTime(row) == updated) {
+                        label = prev.label(row);
+                        sortKey = prev.sortKey(row);
+                    } else if (row != null) {
+                        previous[i] = prev.label(row);
+                    }
+                    if (row == null || prev.lastUpdateTime(row) != updated || prev.versionCode(row) != versionCode) {
+                        changed = true;
+                    }
+                } else {
+                    AppCatalogStore.Entry cached = disk.get(key);
+                    if (packages == null && cached != null) updated = cached.lastUpdateTime;
+                    if (cached != null && cached.lastUpdateTime == updated) label = cached.label;
+                    else if (cached != null) previous[i] = cached.label;
+                }
+
+                // A null label marks a miss; it is filled in below.
+                AppInfo app = new AppInfo(packageName, className, label, versionCode, updated);
+                resolved[i] = app;
+                if (label == null) {
+                    misses[missCount++] = i;
+                    changed = true;
+                } else {
+                    known.add(new Row(app, sortKey != null ? sortKey : sortKey(collator, label)));
+                }
+            }
+
+            if (!changed) {
+                LaunchResolver.remember(Arrays.asList(resolved));
+                return prev;
+            }
+
+            Collections.sort(known, BY_SORT_KEY);
+            List<Row> rows = missCount == 0
+                    ? known
+                    : loadLabels(pm, resolveInfos, resolved, previous, Arrays.copyOf(misses, missCount), known,
+                            collator, progress);
+            AppCatalog built = toCatalog(rows);
+
+            synchronized (LOCK) {
+                if (published != base) continue;
+                published = new Published(built, localeTag, shared);
+                // Written under LOCK so an older catalog never lands on disk after a newer one.
+                boolean dirty = missCount > 0 || disk == null || disk.size() != n;
+                if (dirty) AppCatalogStore.write(appContext, localeTag, built);
+            }
+            LaunchResolver.remember(Arrays.asList(resolved));
+            return built;
+        }
+    }
+
+    /**
+     * Loads the missing labels, in parallel when there are enough of them, and merges them into
+     * the already sorted {@code known} rows. Fills {@code resolved} at the miss positions. A chunk
+     * that fails keeps its previous labels (or package names), so a catalog is always returned.
+     */
+    private static List<Row> loadLabels(PackageManager pm, List<ResolveInfo> resolveInfos,
+                                        AppInfo[] resolved, String[] previous, int[] misses,
+                                        List<Row> known, Collator collator, LoadCallback progress) {
+        sortByPreviousLabel(resolved, previous, misses, collator);
+        List<int[]> chunks = new ArrayList<>();
+        // The first chunk is one screen of the misses that sorted first, so it finishes (and can
+        // be shown) first. Without previous labels that order is only by package name.
+        int first = Math.min(FIRST_SCREEN_APPS, misses.length);
+        chunks.add(Arrays.copyOfRange(misses, 0, first));
+        int rest = misses.length - first;
+        if (rest > 0) {
+            int per = Math.max(MIN_CHUNK, (rest + LOADER_THREADS - 1) / LOADER_THREADS);
+            for (int from = first; from < misses.length; from += per) {
+                chunks.add(Arrays.copyOfRange(misses, from, Math.min(misses.length, from + per)));
+            }
+        }
+
+        List<Row> merged = known;
+        if (chunks.size() == 1) {
+            List<Row> part;
+            try {
+                part = labelChunk(pm, resolveInfos, resolved, chunks.get(0), collator);
+            } catch (RuntimeException e) {
+                part = fallbackChunk(resolved, previous, chunks.get(0), collator);
+            }
+            return merge(merged, part);
+        }
 
-        for (ResolveInfo ri : resolveInfos) {
-            String packageName = ri.activityInfo.packageName;
-            CharSequence labelCs = ri.loadLabel(pm);
-            String label = labelCs == null ? packageName : labelCs.toString();
-            apps.add(new AppInfo(packageName, label, ri.loadIcon(pm)));
+        CompletionService<List<Row>> done = new ExecutorCompletionService<>(LOADER);
+        Map<Future<List<Row>>, int[]> pending = new HashMap<>();
+        for (int[] chunk : chunks) {
+            // Collator is not thread-safe; each task gets its own copy.
+            final Collator c = (Collator) collator.clone();
+            final int[] indices = chunk;
+            pending.put(done.submit(new Callable<List<Row>>() {
+                @Override
+                public List<Row> call() {
+                    return labelChunk(pm, resolveInfos, resolved, indices, c);
+                }
+            }), indices);
         }
 
-        Collections.sort(apps, new Comparator<AppInfo>() {
+        int delivered = 0;
+        while (!pending.isEmpty()) {
+            Future<List<Row>> f;
+            try {
+                f = done.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // Stop waiting; whatever is still loading keeps its fallback labels.
+                for (int[] indices : pending.values()) {
+                    merged = merge(merged, fallbackChunk(resolved, previous, indices, collator));
+                }
+                break;
+            }
+            int[] indices = pending.remove(f);
+            List<Row> part;
+            try {
+                part = f.get();
+            } catch (ExecutionException e) {
+                part = fallbackChunk(resolved, previous, indices, collator);
+            } catch (InterruptedException e) {
+                // Not thrown for a finished task; kept for the signature.
+                Thread.currentThread().interrupt();
+                part = fallbackChunk(resolved, previous, indices, collator);
+            }
+            merged = merge(merged, part);
+
+            // First screen as soon as possible, then only when the list has doubled.
+            if (progress != null && !pending.isEmpty() && merged.size() >= Math.max(FIRST_SCREEN_APPS, delivered * 2)) {
+                delivered = merged.size();
+                final AppCatalog partial = toCatalog(merged);
+                final LoadCallback cb = progress;
+                MAIN.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        cb.onCatalogLoaded(partial, false);
+                    }
+                });
+            }
+        }
+        return merged;
+    }
+
+    /** Runs on a loader thread; returns the chunk's rows sorted. */
+    private static List<Row> labelChunk(PackageManager pm, List<ResolveInfo> resolveInfos,
+                                        AppInfo[] resolved, int[] indices, Collator c) {
+        List<Row> out = new ArrayList<>(indices.length);
+        for (int i : indices) {
+            AppInfo stub = resolved[i];
+            String label = loadLabel(pm, resolveInfos.get(i));
+            AppInfo app = new AppInfo(stub.packageName, stub.className, label, stub.versionCode, stub.lastUpdateTime);
+            resolved[i] = app;
+            out.add(new Row(app, sortKey(c, label)));
+        }
+        Collections.sort(out, BY_SORT_KEY);
+        return out;
+    }
+
+    /** Orders misses by their previous label, or package name when there is none. */
+    private static void sortByPreviousLabel(final AppInfo[] resolved, final String[] previous, int[] misses,
+                                            final Collator c) {
+        Integer[] order = new Integer[misses.length];
+        for (int i = 0; i < misses.length; i++) order[i] = misses[i];
+        Arrays.sort(order, new Comparator<Integer>() {
             @Override
-            public int compare(AppInfo a, AppInfo b) {
-                return a.label.compareToIgnoreCase(b.label);
+            public int compare(Integer a, Integer b) {
+                return c.compare(provisionalLabel(resolved, previous, a), provisionalLabel(resolved, previous, b));
             }
         });
+        for (int i = 0; i < misses.length; i++) misses[i] = order[i];
+    }
+
+    private static String provisionalLabel(AppInfo[] resolved, String[] previous, int i) {
+        return previous[i] != null ? previous[i] : resolved[i].packageName;
+    }
+
+    /** Rows for a chunk whose labels could not be loaded; see {@link #LABEL_FAILED}. */
+    private static List<Row> fallbackChunk(AppInfo[] resolved, String[] previous, int[] indices, Collator c) {
+        List<Row> out = new ArrayList<>(indices.length);
+        for (int i : indices) {
+            AppInfo stub = resolved[i];
+            String label = provisionalLabel(resolved, previous, i);
+            AppInfo app = new AppInfo(stub.packageName, stub.className, label, stub.versionCode, LABEL_FAILED);
+            resolved[i] = app;
+            out.add(new Row(app, sortKey(c, label)));
+        }
+        Collections.sort(out, BY_SORT_KEY);
+        return out;
+    }
+
+    /** Merges two lists sorted by sort key into a new list. */
+    private static List<Row> merge(List<Row> a, List<Row> b) {
+        List<Row> out = new ArrayList<>(a.size() + b.size());
+        int i = 0, j = 0;
+        while (i < a.size() && j < b.size()) {
+            out.add(BY_SORT_KEY.compare(a.get(i), b.get(j)) <= 0 ? a.get(i++) : b.get(j++));
+        }
+        while (i < a.size()) out.add(a.get(i++));
+        while (j < b.size()) out.add(b.get(j++));
+        return out;
+    }
+
+    private static AppCatalog toCatalog(List<Row> rows) {
+        List<AppInfo> apps = new ArrayList<>(rows.size());
+        List<byte[]> keys = new ArrayList<>(rows.size());
+        for (Row r : rows) {
+            apps.add(r.app);
+            keys.add(r.key);
+        }
+        return AppCatalog.of(apps, keys);
+    }
+
+    /**
+     * Re-resolves a single package after an install, removal or update and replaces the shared
+     * catalog with a patched copy. Returns false if nothing changed (or no catalog has been loaded
+     * yet). Call off the main thread.
+     */
+    static boolean applyPackageChange(Context context, String packageName) {
+        Context appContext = context.getApplicationContext();
+        PackageManager pm = appContext.getPackageManager();
+
+        Intent intent = new Intent(Intent.ACTION_MAIN);
+        intent.addCategory(Intent.CATEGORY_LAUNCHER);
+        intent.setPackage(packageName);
+
+        List<ResolveInfo> resolveInfos;
+        PackageInfo pi = null;
+        try {
+            resolveInfos = pm.queryIntentActivities(intent, 0);
+            if (!resolveInfos.isEmpty()) pi = pm.getPackageInfo(packageName, 0);
+        } catch (Throwable t) {
+            // Removed between the event and this query.
+            resolveInfos = Collections.emptyList();
+        }
+        long updated = pi == null ? 0L : pi.lastUpdateTime;
+        long versionCode = pi == null ? 0L : PackageInfoCompat.getLongVersionCode(pi);
+
+        List<String> labels = new ArrayList<>(resolveInfos.size());
+        for (ResolveInfo ri : resolveInfos) labels.add(loadLabel(pm, ri));
+
+        // Patched outside LOCK like a load, and redone if another load or patch published first.
+        while (true) {
+            Published base = published;
+            if (base == null) return false;
+            AppCatalog catalog = base.catalog;
+            Collator collator = (Collator) base.collator.clone();
+
+            List<Row> next = new ArrayList<>(catalog.size() + resolveInfos.size());
+            boolean changed = false;
+            for (int row = 0; row < catalog.size(); row++) {
+                if (catalog.packageName(row).equals(packageName)) {
+                    changed = true;
+                } else {
+                    byte[] key = catalog.sortKey(row);
+                    next.add(new Row(catalog.get(row), key != null ? key : sortKey(collator, catalog.label(row))));
+                }
+            }
+
+            // The rest is already in collation order, so a binary search on the keys is enough to splice.
+            for (int i = 0; i < resolveInfos.size(); i++) {
+                String label = labels.get(i);
+                Row r = new Row(new AppInfo(packageName, resolveInfos.get(i).activityInfo.name, label, versionCode, updated),
+                        sortKey(collator, label));
+                int pos = Collections.binarySearch(next, r, BY_SORT_KEY);
+                next.add(pos < 0 ? -pos - 1 : pos, r);
+                changed = true;
+            }
+            if (!changed) return false;
+
+            AppCatalog patched = toCatalog(next);
+            synchronized (LOCK) {
+                if (published != base) continue;
+                published = new Published(patched, base.localeTag, base.collator);
+                AppCatalogStore.write(appContext, base.localeTag, patched);
+            }
+            return true;
+        }
+    }
 
-        return apps;
+    static void setTrackingPackageEvents(boolean tracking) {
+        trackingPackageEvents = tracking;
     }
 
     public static Intent getLaunchIntent(Context context, String packageName) {
-        return context.getPackageManager().getLaunchIntentForPackage(packageName);
+        return LaunchResolver.launchIntentFor(context, packageName);
+    }
+
+    private static byte[] sortKey(Collator c, String label) {
+        return c.getCollationKey(label).toByteArray();
+    }
+
+    /** Collator used for all label sort keys; case-insensitive but accent-aware. */
+    static Collator labelCollator(Locale locale) {
+        Collator c = Collator.getInstance(locale);
+        c.setStrength(Collator.SECONDARY);
+        return c;
+    }
+
+    private static String loadLabel(PackageManager pm, ResolveInfo ri) {
+        CharSequence labelCs = ri.loadLabel(pm);
+        return labelCs == null ? ri.activityInfo.packageName : labelCs.toString();
+    }
+
+    /**
+     * Package info by package name, or null if it could not be read; every row is then treated as
+     * unchanged, so labels come from the current catalog or the snapshot.
+     */
+    private static Map<String, PackageInfo> installedPackages(PackageManager pm) {
+        Map<String, PackageInfo> out = new HashMap<>();
+        try {
+            // One call for every package instead of a getPackageInfo round trip per app.
+            for (PackageInfo pi : pm.getInstalledPackages(0)) {
+                out.put(pi.packageName, pi);
+            }
+        } catch (Throwable t) {
+            return null;
+        }
+        return out;
     }
 }
@@ -0,0 +1,390 @@
+package com.example.live.launcher;
+
+import androidx.annotation.NonNull;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Search index over app labels, built once per catalog. Results are row indices into it.
+ *
+ * Labels are normalized (locale lowercase, Latin, Greek and Cyrillic accents stripped, punctuation
+ * as word breaks) and
+ * indexed by 1-3 character n-grams for substring lookups. A query matches by label prefix, word
+ * prefix, word initials ("gm" for "Google Maps"), substring, or a one-edit typo on a word prefix,
+ * ranked in that order, with launch history breaking ties inside a tier. When the query extends
+ * the previous one, only the previous hits are re-checked, provided they are complete (the typo
+ * tier was scanned, or is not used at this query length).
+ */
+final class AppSearchIndex {
+
+    private static final int MAX_GRAM = 3;
+    // Typo tolerance only kicks in once the query is long enough to be meaningful.
+    private static final int FUZZY_MIN_QUERY = 4;
+    // Fuzzy scanning touches every word, so only do it when exact matches are sparse.
+    private static final int FUZZY_MAX_EXACT_HITS = 8;
+    // With an empty query, this many frequently launched apps are lifted above the A-Z list.
+    private static final int LIKELY_SLOTS = 5;
+    private static final float LIKELY_MIN_SCORE = 0.5f;
+
+    private static final int TIER_NONE = Integer.MAX_VALUE;
+    private static final int TIER_LABEL_PREFIX = 0;
+    private static final int TIER_WORD_PREFIX = 1;
+    private static final int TIER_INITIALS = 2;
+    private static final int TIER_SUBSTRING = 3;
+    private static final int TIER_FUZZY = 4;
+
+    // Marks are part of words: Indic vowel signs and viramas are spelling, not decoration.
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{M}\\p{N}]+");
+
+    private static AppSearchIndex cached;
+
+    private final AppCatalog catalog;
+    private final Locale locale;
+    private final String[] normalized;
+    private final String[][] words;
+    private final String[] initials;
+    private final Map<String, int[]> grams;
+
+    // Narrowing state: the last query, the ids it matched, and whether those include typo matches.
+    private String lastQuery;
+    private int[] lastHits;
+    private boolean lastFuzzyScanned;
+
+    private AppSearchIndex(@NonNull AppCatalog catalog, @NonNull Locale locale) {
+        this.catalog = catalog;
+        this.locale = locale;
+        int n = catalog.size();
+        this.normalized = new String[n];
+        this.words = new String[n][];
+        this.initials = new String[n];
+
+        Map<String, IntList> postings = new HashMap<>();
+        for (int id = 0; id < n; id++) {
+            String norm = normalize(catalog.label(id), locale);
+            normalized[id] = norm;
+            String[] w = norm.isEmpty() ? new String[0] : norm.split(" ");
+            words[id] = w;
+            StringBuilder ini = new StringBuilder(w.length);
+            for (String word : w) ini.append(word.charAt(0));
+            initials[id] = ini.toString();
+
+            for (int len = 1; len <= MAX_GRAM; len++) {
+                for (int i = 0; i + len <= norm.length(); i++) {
+                    String g = norm.substring(i, i + len);
+                    IntList list = postings.get(g);
+                    if (list == null) {
+                        list = new IntList();
+                        postings.put(g, list);
+                    }
+                    list.addIfNotLast(id);
+                }
+            }
+        }
+
+        this.grams = new HashMap<>(postings.size() * 2);
+        for (Map.Entry<String, IntList> e : postings.entrySet()) {
+            grams.put(e.getKey(), e.getValue().toArray());
+        }
+    }
+
+    /** Returns the index for this catalog, building it only when the catalog was replaced. */
+    @NonNull
+    static synchronized AppSearchIndex forCatalog(@NonNull AppCatalog catalog) {
+        Locale locale = Locale.getDefault();
+        if (cached == null || cached.catalog != catalog || !cached.locale.equals(locale)) {
+            cached = new AppSearchIndex(catalog, locale);
+        }
+        return cached;
+    }
+
+    @NonNull
+    AppCatalog catalog() {
+        return catalog;
+    }
+
+    /** Matching rows of {@link #catalog()}, best first. */
+    @NonNull
+    synchronized int[] search(@NonNull String rawQuery, @NonNull LaunchHistoryStore.Ranker ranker) {
+        String q = normalize(rawQuery, locale);
+        if (q.isEmpty()) {
+            lastQuery = null;
+            lastHits = null;
+            lastFuzzyScanned = false;
+            return likelyFirst(ranker);
+        }
+
+        boolean fuzzy = q.length() >= FUZZY_MIN_QUERY;
+        int[] candidates;
+        boolean fullScan;
+        if (lastQuery != null && q.startsWith(lastQuery)
+                && (lastQuery.length() >= FUZZY_MIN_QUERY) == fuzzy
+                && (!fuzzy || lastFuzzyScanned)) {
+            // Every tier is monotonic in the query, so hits for "abc" are a superset of hits for "abcd".
+            // That only holds if the typo tier was scanned for "abc"; otherwise scan afresh.
+            candidates = lastHits;
+            fullScan = false;
+        } else {
+            candidates = gramCandidates(q);
+            fullScan = true;
+        }
+
+        int[] tiers = new int[catalog.size()];
+        Arrays.fill(tiers, TIER_NONE);
+        IntList hits = new IntList();
+
+        if (candidates != null) {
+            for (int id : candidates) {
+                int tier = exactTier(id, q);
+                if (tier != TIER_NONE) {
+                    tiers[id] = tier;
+                    hits.add(id);
+                }
+            }
+        }
+
+        if (fullScan) {
+            // Initials are not substrings, so n-grams cannot find them.
+            for (int id = 0; id < catalog.size(); id++) {
+                if (tiers[id] == TIER_NONE && initials[id].startsWith(q)) {
+                    tiers[id] = TIER_INITIALS;
+                    hits.add(id);
+                }
+            }
+        }
+
+        // Same rule on both paths, so a narrowed query returns what a fresh one would.
+        boolean fuzzyScanned = false;
+        if (fuzzy && hits.size() < FUZZY_MAX_EXACT_HITS) {
+            fuzzyScanned = true;
+            if (fullScan) {
+                for (int id = 0; id < catalog.size(); id++) {
+                    if (tiers[id] == TIER_NONE && fuzzyWordMatch(id, q)) {
+                        tiers[id] = TIER_FUZZY;
+                        hits.add(id);
+                    }
+                }
+            } else if (candidates != null) {
+                for (int id : candidates) {
+                    if (tiers[id] == TIER_NONE && fuzzyWordMatch(id, q)) {
+                        tiers[id] = TIER_FUZZY;
+                        hits.add(id);
+                    }
+                }
+            }
+        }
+
+        int[] ids = hits.toArray();
+        Arrays.sort(ids);
+        lastQuery = q;
+        lastHits = ids;
+        lastFuzzyScanned = fuzzyScanned;
+
+        return rank(ids, tiers, ranker);
+    }
+
+    @NonNull
+    private int[] rank(@NonNull int[] ids, @NonNull final int[] tiers,
+                       @NonNull LaunchHistoryStore.Ranker ranker) {
+        final float[] scores = new float[catalog.size()];
+        Integer[] order = new Integer[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            order[i] = ids[i];
+            scores[ids[i]] = ranker.score(catalog.packageName(ids[i]));
+        }
+        // Tier first, then launch score; ids break ties in the catalog's alphabetical order.
+        Arrays.sort(order, (a, b) -> {
+            if (tiers[a] != tiers[b]) return Integer.compare(tiers[a], tiers[b]);
+            if (scores[a] != scores[b]) return Float.compare(scores[b], scores[a]);
+            return Integer.compare(a, b);
+        });
+
+        int[] out = new int[ids.length];
+        for (int i = 0; i < order.length; i++) out[i] = order[i];
+        return out;
+    }
+
+    @NonNull
+    private int[] likelyFirst(@NonNull LaunchHistoryStore.Ranker ranker) {
+        int[] top = new int[LIKELY_SLOTS];
+        float[] topScores = new float[LIKELY_SLOTS];
+        int found = 0;
+        for (int id = 0; id < catalog.size(); id++) {
+            float score = ranker.score(catalog.packageName(id));
+            if (score < LIKELY_MIN_SCORE) continue;
+            // Insertion into a tiny sorted array.
+            int pos = Math.min(found, LIKELY_SLOTS - 1);
+            if (found == LIKELY_SLOTS && score <= topScores[pos]) continue;
+            while (pos > 0 && topScores[pos - 1] < score) {
+                top[pos] = top[pos - 1];
+                topScores[pos] = topScores[pos - 1];
+                pos--;
+            }
+            top[pos] = id;
+            topScores[pos] = score;
+            if (found < LIKELY_SLOTS) found++;
+        }
+
+        int[] out = new int[catalog.size()];
+        boolean[] lifted = new boolean[catalog.size()];
+        int n = 0;
+        for (int i = 0; i < found; i++) {
+            out[n++] = top[i];
+            lifted[top[i]] = true;
+        }
+        for (int id = 0; id < catalog.size(); id++) {
+            if (!lifted[id]) out[n++] = id;
+        }
+        return out;
+    }
+
+    private int exactTier(int id, @NonNull String q) {
+        String norm = normalized[id];
+        if (norm.startsWith(q)) return TIER_LABEL_PREFIX;
+        for (String w : words[id]) {
+            if (w.startsWith(q)) return TIER_WORD_PREFIX;
+        }
+        if (initials[id].startsWith(q)) return TIER_INITIALS;
+        if (norm.contains(q)) return TIER_SUBSTRING;
+        return TIER_NONE;
+    }
+
+    private boolean fuzzyWordMatch(int id, @NonNull String q) {
+        for (String w : words[id]) {
+            if (prefixEditDistanceAtMostOne(q, w)) return true;
+        }
+        return false;
+    }
+
+    /** Ids whose label contains every n-gram of the query (a superset of substring matches). */
+    private int[] gramCandidates(@NonNull String q) {
+        int len = Math.min(MAX_GRAM, q.length());
+        int[] acc = null;
+        for (int i = 0; i + len <= q.length(); i++) {
+            int[] list = grams.get(q.substring(i, i + len));
+            if (list == null) return new int[0];
+            acc = acc == null ? list : intersect(acc, list);
+            if (acc.length == 0) break;
+        }
+        return acc == null ? new int[0] : acc;
+    }
+
+    @NonNull
+    private static int[] intersect(@NonNull int[] a, @NonNull int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                out[k++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, k);
+    }
+
+    /**
+     * True if q is within one edit (insert, delete, substitute) of some prefix of w.
+     * Single-row DP that exits as soon as every cell in a row exceeds the budget.
+     */
+    static boolean prefixEditDistanceAtMostOne(@NonNull String q, @NonNull String w) {
+        int m = q.length();
+        int n = w.length();
+        if (n + 1 < m || m == 0) return false;
+        if (n == 0) return m <= 1;
+
+        // With one edit, the first characters must line up unless that edit is spent right here.
+        char q0 = q.charAt(0);
+        char w0 = w.charAt(0);
+        if (q0 != w0
+                && (m < 2 || q.charAt(1) != w0)
+                && (n < 2 || w.charAt(1) != q0)
+                && !w.regionMatches(1, q, 1, m - 1)) {
+            return false;
+        }
+
+        int[] prev = new int[n + 1];
+        int[] cur = new int[n + 1];
+        for (int j = 0; j <= n; j++) prev[j] = j;
+        for (int i = 1; i <= m; i++) {
+            cur[0] = i;
+            int rowMin = i;
+            char qc = q.charAt(i - 1);
+            for (int j = 1; j <= n; j++) {
+                int cost = qc == w.charAt(j - 1) ? 0 : 1;
+                int v = Math.min(prev[j - 1] + cost, Math.min(prev[j] + 1, cur[j - 1] + 1));
+                cur[j] = v;
+                if (v < rowMin) rowMin = v;
+            }
+            if (rowMin > 1) return false;
+            int[] t = prev;
+            prev = cur;
+            cur = t;
+        }
+        // Any prefix of w may end the match, so take the best cell of the last row.
+        for (int j = 0; j <= n; j++) {
+            if (prev[j] <= 1) return true;
+        }
+        return false;
+    }
+
+    @NonNull
+    static String normalize(@NonNull CharSequence raw, @NonNull Locale locale) {
+        String s = stripAccents(Normalizer.normalize(raw, Normalizer.Form.NFD));
+        s = s.toLowerCase(locale);
+        s = NON_WORD.matcher(s).replaceAll(" ");
+        return s.trim();
+    }
+
+    /**
+     * Drops nonspacing marks that follow a Latin, Greek or Cyrillic letter ("é" to "e"); marks in
+     * other scripts change the letter and are kept.
+     */
+    @NonNull
+    private static String stripAccents(@NonNull String nfd) {
+        StringBuilder out = new StringBuilder(nfd.length());
+        Character.UnicodeScript base = null;
+        for (int i = 0; i < nfd.length(); ) {
+            int cp = nfd.codePointAt(i);
+            i += Character.charCount(cp);
+            if (Character.getType(cp) == Character.NON_SPACING_MARK) {
+                if (base == Character.UnicodeScript.LATIN || base == Character.UnicodeScript.GREEK
+                        || base == Character.UnicodeScript.CYRILLIC) {
+                    continue;
+                }
+            } else {
+                base = Character.UnicodeScript.of(cp);
+            }
+            out.appendCodePoint(cp);
+        }
+        return out.toString();
+    }
+
+    private static final class IntList {
+        private int[] data = new int[8];
+        private int size;
+
+        void add(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+
+        void addIfNotLast(int v) {
+            if (size == 0 || data[size - 1] != v) add(v);
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
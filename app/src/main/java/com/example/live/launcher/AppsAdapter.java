@@ -1,5 +1,8 @@
 package com.example.live.launcher;
 
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -7,15 +10,24 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.live.R;
 
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * Binds rows of a shared {@link AppCatalog}. The adapter holds only the catalog reference and the
+ * row indices to show, so several screens can present the same catalog without copying it.
+ */
 public final class AppsAdapter extends RecyclerView.Adapter<AppsAdapter.VH> {
 
     public interface Listener {
@@ -27,23 +39,77 @@ public final class AppsAdapter extends RecyclerView.Adapter<AppsAdapter.VH> {
     private final boolean showCheckbox;
     private final Set<String> checkedPackages = new HashSet<>();
 
-    private final List<AppInfo> items = new ArrayList<>();
+    // Rebinds only the pin checkbox of a row, not its label or icon.
+    private static final Object PAYLOAD_CHECKED = new Object();
+
+    // Diffs are computed on a background thread; only changed rows are rebound.
+    private static final ExecutorService DIFFER = Executors.newSingleThreadExecutor(r -> new Thread(r, "apps-diff"));
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    private AppCatalog catalog = AppCatalog.EMPTY;
+    private int[] rows = new int[0];
+    // Bumped per submit; a diff finishing after a newer submit is dropped.
+    private int submitGeneration;
+
+    // Icons are resolved off the main thread; rows show a placeholder until theirs arrives.
+    private static final int PREFETCH_AHEAD = 8;
+    private int lastPrefetchEdge = RecyclerView.NO_POSITION;
+    private final RecyclerView.OnScrollListener prefetcher = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
+            if (dy != 0) prefetchAhead(rv, dy > 0);
+        }
+    };
 
     public AppsAdapter(Listener listener, boolean showCheckbox) {
         this.listener = listener;
         this.showCheckbox = showCheckbox;
+        setHasStableIds(true);
     }
 
-    public void submit(List<AppInfo> newItems) {
-        items.clear();
-        if (newItems != null) items.addAll(newItems);
-        notifyDataSetChanged();
+    /** Shows the given rows of the catalog, in order. Call on the main thread. */
+    public void submit(@NonNull final AppCatalog nextCatalog, @NonNull final int[] nextRows) {
+        final int generation = ++submitGeneration;
+        final AppCatalog oldCatalog = catalog;
+        final int[] oldRows = rows;
+        if (oldRows.length == 0 || nextRows.length == 0) {
+            // Nothing to match up; skip the diff.
+            catalog = nextCatalog;
+            rows = nextRows;
+            notifyDataSetChanged();
+            return;
+        }
+
+        DIFFER.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult result = DiffUtil.calculateDiff(
+                        new RowDiff(oldCatalog, oldRows, nextCatalog, nextRows));
+                MAIN.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != submitGeneration) return;
+                        catalog = nextCatalog;
+                        rows = nextRows;
+                        result.dispatchUpdatesTo(AppsAdapter.this);
+                    }
+                });
+            }
+        });
     }
 
     public void setCheckedPackages(Set<String> packages) {
+        Set<String> next = packages == null ? new HashSet<String>() : new HashSet<>(packages);
+        Set<String> toggled = new HashSet<>();
+        for (String p : checkedPackages) if (!next.contains(p)) toggled.add(p);
+        for (String p : next) if (!checkedPackages.contains(p)) toggled.add(p);
+
         checkedPackages.clear();
-        if (packages != null) checkedPackages.addAll(packages);
-        notifyDataSetChanged();
+        checkedPackages.addAll(next);
+
+        for (int i = 0; i < rows.length; i++) {
+            if (toggled.contains(catalog.packageName(rows[i]))) notifyItemChanged(i, PAYLOAD_CHECKED);
+        }
     }
 
     public Set<String> getCheckedPackages() {
@@ -58,28 +124,33 @@ public final class AppsAdapter extends RecyclerView.Adapter<AppsAdapter.VH> {
     }
 
     @Override
-    public void onBindViewHolder(@NonNull final VH h, int position) {
-        final AppInfo app = items.get(position);
-        h.label.setText(app.label);
-        h.icon.setImageDrawable(app.icon);
-
-        if (showCheckbox) {
-            h.checkbox.setVisibility(View.VISIBLE);
-            boolean checked = checkedPackages.contains(app.packageName);
-            h.checkbox.setText(checked ? "✓" : "");
-        } else {
-            h.checkbox.setVisibility(View.GONE);
+    public void onBindViewHolder(@NonNull VH h, int position, @NonNull List<Object> payloads) {
+        if (!payloads.isEmpty() && onlyChecked(payloads)) {
+            bindCheckbox(h, catalog.packageName(rows[position]));
+            return;
         }
+        onBindViewHolder(h, position);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull final VH h, int position) {
+        final int row = rows[position];
+        h.label.setText(catalog.label(row));
+        bindIcon(h, catalog, row);
+        bindCheckbox(h, catalog.packageName(row));
 
         h.itemView.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
+                int pos = h.getBindingAdapterPosition();
+                if (pos == RecyclerView.NO_POSITION) return;
                 if (showCheckbox) {
-                    if (checkedPackages.contains(app.packageName)) checkedPackages.remove(app.packageName);
-                    else checkedPackages.add(app.packageName);
-                    notifyItemChanged(h.getBindingAdapterPosition());
+                    String packageName = catalog.packageName(rows[pos]);
+                    if (checkedPackages.contains(packageName)) checkedPackages.remove(packageName);
+                    else checkedPackages.add(packageName);
+                    notifyItemChanged(pos, PAYLOAD_CHECKED);
                 } else if (listener != null) {
-                    listener.onAppClicked(app);
+                    listener.onAppClicked(catalog.get(rows[pos]));
                 }
             }
         });
@@ -87,8 +158,9 @@ public final class AppsAdapter extends RecyclerView.Adapter<AppsAdapter.VH> {
         h.itemView.setOnLongClickListener(new View.OnLongClickListener() {
             @Override
             public boolean onLongClick(View v) {
-                if (!showCheckbox && listener != null) {
-                    listener.onAppLongPressed(app);
+                int pos = h.getBindingAdapterPosition();
+                if (!showCheckbox && listener != null && pos != RecyclerView.NO_POSITION) {
+                    listener.onAppLongPressed(catalog.get(rows[pos]));
                     return true;
                 }
                 return false;
@@ -98,7 +170,123 @@ public final class AppsAdapter extends RecyclerView.Adapter<AppsAdapter.VH> {
 
     @Override
     public int getItemCount() {
-        return items.size();
+        return rows.length;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        int row = rows[position];
+        return ((long) catalog.packageName(row).hashCode() << 32) | (catalog.className(row).hashCode() & 0xFFFFFFFFL);
+    }
+
+    private void bindCheckbox(@NonNull VH h, @NonNull String packageName) {
+        if (showCheckbox) {
+            h.checkbox.setVisibility(View.VISIBLE);
+            boolean checked = checkedPackages.contains(packageName);
+            h.checkbox.setText(checked ? "✓" : "");
+        } else {
+            h.checkbox.setVisibility(View.GONE);
+        }
+    }
+
+    private static boolean onlyChecked(@NonNull List<Object> payloads) {
+        for (Object p : payloads) {
+            if (p != PAYLOAD_CHECKED) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull VH h) {
+        h.cancelIconLoad();
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        recyclerView.addOnScrollListener(prefetcher);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        recyclerView.removeOnScrollListener(prefetcher);
+    }
+
+    private void bindIcon(@NonNull final VH h, @NonNull AppCatalog catalog, int row) {
+        h.cancelIconLoad();
+        h.iconKey = IconCache.handle(catalog, row);
+
+        IconCache cache = IconCache.get(h.itemView.getContext());
+        Bitmap cached = cache.peek(h.iconKey);
+        if (cached != null) {
+            h.icon.setImageBitmap(cached);
+            return;
+        }
+
+        h.icon.setImageResource(R.drawable.app_icon_placeholder);
+        h.iconTask = cache.loadAsync(catalog, row, new IconCache.Callback() {
+            @Override
+            public void onIconLoaded(@NonNull String handle, @Nullable Bitmap icon) {
+                h.iconTask = null;
+                // The holder may have been rebound to another app since the load started.
+                if (icon != null && handle.equals(h.iconKey)) h.icon.setImageBitmap(icon);
+            }
+        });
+    }
+
+    private void prefetchAhead(@NonNull RecyclerView rv, boolean forward) {
+        if (!(rv.getLayoutManager() instanceof LinearLayoutManager)) return;
+        LinearLayoutManager lm = (LinearLayoutManager) rv.getLayoutManager();
+        int edge = forward ? lm.findLastVisibleItemPosition() : lm.findFirstVisibleItemPosition();
+        if (edge == RecyclerView.NO_POSITION || edge == lastPrefetchEdge) return;
+        lastPrefetchEdge = edge;
+
+        IconCache cache = IconCache.get(rv.getContext());
+        for (int i = 1; i <= PREFETCH_AHEAD; i++) {
+            int pos = forward ? edge + i : edge - i;
+            if (pos < 0 || pos >= rows.length) break;
+            if (cache.peek(IconCache.handle(catalog, rows[pos])) == null) cache.loadAsync(catalog, rows[pos], null);
+        }
+    }
+
+    /** Rows are the same entry when their component matches, across old and new catalogs. */
+    private static final class RowDiff extends DiffUtil.Callback {
+        private final AppCatalog oldCatalog;
+        private final int[] oldRows;
+        private final AppCatalog newCatalog;
+        private final int[] newRows;
+
+        RowDiff(AppCatalog oldCatalog, int[] oldRows, AppCatalog newCatalog, int[] newRows) {
+            this.oldCatalog = oldCatalog;
+            this.oldRows = oldRows;
+            this.newCatalog = newCatalog;
+            this.newRows = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldRows.length;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newRows.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPos, int newPos) {
+            int a = oldRows[oldPos];
+            int b = newRows[newPos];
+            return oldCatalog.packageName(a).equals(newCatalog.packageName(b))
+                    && oldCatalog.className(a).equals(newCatalog.className(b));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPos, int newPos) {
+            int a = oldRows[oldPos];
+            int b = newRows[newPos];
+            return oldCatalog.label(a).equals(newCatalog.label(b))
+                    && oldCatalog.versionCode(a) == newCatalog.versionCode(b);
+        }
     }
 
     static final class VH extends RecyclerView.ViewHolder {
@@ -106,11 +294,21 @@ public final class AppsAdapter extends RecyclerView.Adapter<AppsAdapter.VH> {
         final TextView label;
         final TextView checkbox;
 
+        @Nullable String iconKey;
+        @Nullable Future<?> iconTask;
+
         VH(@NonNull View itemView) {
             super(itemView);
             icon = itemView.findViewById(R.id.app_icon);
             label = itemView.findViewById(R.id.app_label);
             checkbox = itemView.findViewById(R.id.app_check);
         }
+
+        void cancelIconLoad() {
+            if (iconTask != null) {
+                iconTask.cancel(false);
+                iconTask = null;
+            }
+        }
     }
 }
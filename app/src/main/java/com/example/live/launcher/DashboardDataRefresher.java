@@ -8,14 +8,6 @@ import android.net.Uri;
 
 import androidx.core.content.ContextCompat;
 
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Locale;
-
 public final class DashboardDataRefresher {
 
     private DashboardDataRefresher() {}
@@ -66,38 +58,7 @@ public final class DashboardDataRefresher {
     }
 
     private static void refreshTemperature(Context context) {
-        WeatherClient.SavedLocation loc = WeatherClient.getSavedLocation(context);
-        if (loc == null) return;
-
-        try {
-            String urlStr = String.format(Locale.US,
-                    "https://api.open-meteo.com/v1/forecast?latitude=%f&longitude=%f&current=temperature_2m",
-                    loc.lat, loc.lon);
-
-            HttpURLConnection conn = (HttpURLConnection) new URL(urlStr).openConnection();
-            conn.setConnectTimeout(8000);
-            conn.setReadTimeout(8000);
-            conn.setRequestMethod("GET");
-
-            int code = conn.getResponseCode();
-            if (code != 200) return;
-
-            BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null) sb.append(line);
-            br.close();
-
-            JSONObject root = new JSONObject(sb.toString());
-            JSONObject current = root.optJSONObject("current");
-            if (current == null) return;
-
-            if (current.has("temperature_2m")) {
-                double t = current.optDouble("temperature_2m");
-                String val = String.format(Locale.getDefault(), "%.0f°", t);
-                DashboardDataStore.setTemperature(context, val);
-            }
-        } catch (Throwable ignored) {
-        }
+        // The wallpaper reads the shared weather reading; a fresh one is not fetched again.
+        WeatherClient.refreshIfStale(context, WeatherClient.MAX_AGE_MS);
     }
 }
@@ -3,38 +3,115 @@ package com.example.live.launcher;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import androidx.annotation.NonNull;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Values shown by the dashboard wallpaper, kept together as a single record. The temperature comes
+ * from {@link WeatherClient}.
+ */
 public final class DashboardDataStore {
 
+    // 2: temperature moved to WeatherClient.
+    private static final int VERSION = 2;
+
+    // Legacy keys, read once by the migration.
     private static final String KEY_EVENT = "dash_next_event";
     private static final String KEY_TEMP = "dash_temp";
     private static final String KEY_LAST_UPDATED = "dash_updated_at";
 
+    private static final class Values {
+        final String nextEvent;
+        final long lastUpdatedAt;
+
+        Values(String nextEvent, long lastUpdatedAt) {
+            this.nextEvent = nextEvent;
+            this.lastUpdatedAt = lastUpdatedAt;
+        }
+    }
+
+    private static final Values EMPTY = new Values(null, 0L);
+
+    private static final RecordStore<Values> STORE = new RecordStore<>("dashboard", VERSION,
+            new RecordStore.Codec<Values>() {
+                @Override
+                public void write(@NonNull DataOutputStream out, @NonNull Values v) throws IOException {
+                    writeNullable(out, v.nextEvent);
+                    out.writeLong(v.lastUpdatedAt);
+                }
+
+                @NonNull
+                @Override
+                public Values read(@NonNull DataInputStream in, int version) throws IOException {
+                    String nextEvent = readNullable(in);
+                    if (version < 2) readNullable(in); // Old preformatted temperature.
+                    return new Values(nextEvent, in.readLong());
+                }
+            },
+            new RecordStore.Migration<Values>() {
+                @Override
+                public List<Values> migrate(@NonNull SharedPreferences sp, @NonNull SharedPreferences.Editor ed) {
+                    if (!sp.contains(KEY_EVENT) && !sp.contains(KEY_TEMP) && !sp.contains(KEY_LAST_UPDATED)) return null;
+                    // The old temperature is dropped; WeatherClient keeps its own reading.
+                    Values v = new Values(sp.getString(KEY_EVENT, null), sp.getLong(KEY_LAST_UPDATED, 0L));
+                    ed.remove(KEY_EVENT).remove(KEY_TEMP).remove(KEY_LAST_UPDATED);
+                    return Collections.singletonList(v);
+                }
+            });
+
     private DashboardDataStore() {}
 
-    public static void setNextEvent(Context context, String value) {
-        SharedPreferences sp = SecurePrefs.get(context);
-        sp.edit().putString(KEY_EVENT, value).apply();
+    /** Notified on the main thread when the stored value changes. */
+    static void addListener(RecordStore.Listener listener) {
+        STORE.addListener(listener);
     }
 
-    public static void setTemperature(Context context, String value) {
-        SharedPreferences sp = SecurePrefs.get(context);
-        sp.edit().putString(KEY_TEMP, value).apply();
+    static void removeListener(RecordStore.Listener listener) {
+        STORE.removeListener(listener);
+    }
+
+    public static void setNextEvent(Context context, String value) {
+        synchronized (STORE) {
+            Values v = current(context);
+            put(context, new Values(value, v.lastUpdatedAt));
+        }
     }
 
     public static void setLastUpdatedAt(Context context, long epochMs) {
-        SharedPreferences sp = SecurePrefs.get(context);
-        sp.edit().putLong(KEY_LAST_UPDATED, epochMs).apply();
+        synchronized (STORE) {
+            Values v = current(context);
+            put(context, new Values(v.nextEvent, epochMs));
+        }
     }
 
     public static String getNextEvent(Context context) {
-        return SecurePrefs.get(context).getString(KEY_EVENT, null);
+        return current(context).nextEvent;
     }
 
-    public static String getTemperature(Context context) {
-        return SecurePrefs.get(context).getString(KEY_TEMP, null);
+    public static long getLastUpdatedAt(Context context) {
+        return current(context).lastUpdatedAt;
     }
 
-    public static long getLastUpdatedAt(Context context) {
-        return SecurePrefs.get(context).getLong(KEY_LAST_UPDATED, 0L);
+    private static Values current(Context context) {
+        List<Values> list = STORE.list(context);
+        return list.isEmpty() ? EMPTY : list.get(0);
+    }
+
+    private static void put(Context context, Values v) {
+        STORE.replaceAll(context, Collections.singletonList(v));
+    }
+
+    private static void writeNullable(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) out.writeUTF(s);
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
     }
 }
@@ -27,8 +27,15 @@ public final class DashboardWallpaperService extends WallpaperService {
             @Override
             public void run() {
                 drawFrame();
-                // Update every minute.
-                handler.postDelayed(this, 60_000L);
+                // Next minute boundary, so the clock flips on time.
+                handler.postDelayed(this, 60_000L - (System.currentTimeMillis() % 60_000L));
+            }
+        };
+        // Stored values are redrawn when they change instead of being re-read on every tick.
+        private final RecordStore.Listener dataListener = new RecordStore.Listener() {
+            @Override
+            public void onRecordsChanged() {
+                drawFrame();
             }
         };
 
@@ -47,9 +54,13 @@ public final class DashboardWallpaperService extends WallpaperService {
         public void onVisibilityChanged(boolean visible) {
             this.visible = visible;
             if (visible) {
+                DashboardDataStore.addListener(dataListener);
+                WeatherClient.addListener(dataListener);
                 handler.removeCallbacks(tick);
                 handler.post(tick);
             } else {
+                DashboardDataStore.removeListener(dataListener);
+                WeatherClient.removeListener(dataListener);
                 handler.removeCallbacks(tick);
             }
         }
@@ -57,6 +68,8 @@ public final class DashboardWallpaperService extends WallpaperService {
         @Override
         public void onSurfaceDestroyed(SurfaceHolder holder) {
             super.onSurfaceDestroyed(holder);
+            DashboardDataStore.removeListener(dataListener);
+            WeatherClient.removeListener(dataListener);
             handler.removeCallbacks(tick);
             visible = false;
         }
@@ -84,7 +97,7 @@ public final class DashboardWallpaperService extends WallpaperService {
                 paint.setTextSize(sp(18));
                 c.drawText(date, x, y + dp(32), paint);
 
-                String temp = DashboardDataStore.getTemperature(DashboardWallpaperService.this);
+                String temp = WeatherClient.formatTemperature(WeatherClient.getReading(DashboardWallpaperService.this));
                 String next = DashboardDataStore.getNextEvent(DashboardWallpaperService.this);
 
                 float yy = y + dp(80);
@@ -0,0 +1,114 @@
+package com.example.live.launcher;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Hourly temperatures for one 0.1° grid cell as an evenly spaced series: a start time, a step and
+ * one float per hour. The temperature at any moment inside the series is interpolated locally.
+ */
+final class HourlyForecast {
+
+    // 0.1° is about 11 km of latitude: small edits to a saved location stay in the same cell.
+    private static final double CELL_DEGREES = 0.1;
+
+    final int cellLat;
+    final int cellLon;
+    final long fetchedAt;
+    final long startSec;
+    final int stepSec;
+    final float[] tempC;
+
+    HourlyForecast(int cellLat, int cellLon, long fetchedAt, long startSec, int stepSec, @NonNull float[] tempC) {
+        this.cellLat = cellLat;
+        this.cellLon = cellLon;
+        this.fetchedAt = fetchedAt;
+        this.startSec = startSec;
+        this.stepSec = stepSec;
+        this.tempC = tempC;
+    }
+
+    static int cellOf(double degrees) {
+        return (int) Math.round(degrees / CELL_DEGREES);
+    }
+
+    /** Center of a cell in degrees; forecasts are requested there so one fetch serves the cell. */
+    static double degreesOf(int cell) {
+        return cell * CELL_DEGREES;
+    }
+
+    boolean isCell(int lat, int lon) {
+        return cellLat == lat && cellLon == lon;
+    }
+
+    /** Time of the last sample, epoch ms. */
+    long endMs() {
+        return (startSec + (long) (tempC.length - 1) * stepSec) * 1000L;
+    }
+
+    /** Linear interpolation between the surrounding hours; NaN outside the series. */
+    double tempAt(long epochMs) {
+        double pos = (epochMs / 1000.0 - startSec) / stepSec;
+        if (pos < 0 || pos > tempC.length - 1) return Double.NaN;
+        int i = (int) pos;
+        float a = tempC[i];
+        if (i == tempC.length - 1) return a;
+        float b = tempC[i + 1];
+        // The API sends null for hours it has no value for; use the neighbour instead.
+        if (Float.isNaN(a)) return b;
+        if (Float.isNaN(b)) return a;
+        return a + (b - a) * (pos - i);
+    }
+
+    /**
+     * Parses an Open-Meteo response requested with {@code hourly=temperature_2m} and
+     * {@code timeformat=unixtime}; null if the series is missing or not evenly spaced.
+     */
+    @Nullable
+    static HourlyForecast parse(@NonNull String json, int cellLat, int cellLon, long fetchedAt) throws Exception {
+        JSONObject hourly = new JSONObject(json).optJSONObject("hourly");
+        if (hourly == null) return null;
+        JSONArray times = hourly.optJSONArray("time");
+        JSONArray temps = hourly.optJSONArray("temperature_2m");
+        if (times == null || temps == null || times.length() < 2 || times.length() != temps.length()) return null;
+
+        long start = times.getLong(0);
+        int step = (int) (times.getLong(1) - start);
+        if (step <= 0) return null;
+        float[] out = new float[times.length()];
+        for (int i = 0; i < out.length; i++) {
+            if (times.getLong(i) != start + (long) i * step) return null;
+            out[i] = temps.isNull(i) ? Float.NaN : (float) temps.getDouble(i);
+        }
+        return new HourlyForecast(cellLat, cellLon, fetchedAt, start, step, out);
+    }
+
+    void write(@NonNull DataOutputStream out) throws IOException {
+        out.writeInt(cellLat);
+        out.writeInt(cellLon);
+        out.writeLong(fetchedAt);
+        out.writeLong(startSec);
+        out.writeInt(stepSec);
+        out.writeInt(tempC.length);
+        for (float t : tempC) out.writeFloat(t);
+    }
+
+    @NonNull
+    static HourlyForecast read(@NonNull DataInputStream in) throws IOException {
+        int cellLat = in.readInt();
+        int cellLon = in.readInt();
+        long fetchedAt = in.readLong();
+        long startSec = in.readLong();
+        int stepSec = in.readInt();
+        float[] temps = new float[in.readInt()];
+        for (int i = 0; i < temps.length; i++) temps[i] = in.readFloat();
+        return new HourlyForecast(cellLat, cellLon, fetchedAt, startSec, stepSec, temps);
+    }
+}
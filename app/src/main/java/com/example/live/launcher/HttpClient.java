@@ -0,0 +1,227 @@
+package com.example.live.launcher;
+
+import android.content.Context;
+import android.net.http.HttpResponseCache;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The one place the launcher talks HTTP.
+ *
+ * Responses are read to the end and the stream closed without {@code disconnect()}, so the
+ * connection goes back to the platform keep-alive pool. Once {@link #installCacheAsync(Context)}
+ * has run, GETs go through an on-disk {@link HttpResponseCache} that honors Cache-Control and
+ * revalidates with ETag / Last-Modified. Bodies are requested gzip-compressed and inflated here.
+ *
+ * Nothing on the request path needs a Context, so callers can be pointed at a local stand-in
+ * server by swapping their base URL.
+ */
+public final class HttpClient {
+
+    /** One GET; build with {@link #get(String)}. */
+    public static final class Request {
+        final String url;
+        int connectTimeoutMs = 7000;
+        int readTimeoutMs = 7000;
+
+        private Request(@NonNull String url) {
+            this.url = url;
+        }
+
+        @NonNull
+        public Request timeouts(int connectTimeoutMs, int readTimeoutMs) {
+            this.connectTimeoutMs = connectTimeoutMs;
+            this.readTimeoutMs = readTimeoutMs;
+            return this;
+        }
+
+        @NonNull
+        public Response execute() throws IOException {
+            return HttpClient.execute(this);
+        }
+    }
+
+    public static final class Response {
+        public final int code;
+        @NonNull public final String body;
+
+        Response(int code, @NonNull String body) {
+            this.code = code;
+            this.body = body;
+        }
+
+        public boolean isSuccessful() {
+            return code >= 200 && code < 300;
+        }
+    }
+
+    /** Latency and size of one finished call. */
+    public static final class CallStats {
+        @NonNull public final String host;
+        @NonNull public final String path;
+        public final int code;
+        public final long latencyMs;
+        /** Bytes received on the wire (compressed), or from the cache. */
+        public final long wireBytes;
+        public final long bodyBytes;
+        public final boolean fromCache;
+
+        CallStats(@NonNull String host, @NonNull String path, int code, long latencyMs, long wireBytes,
+                  long bodyBytes, boolean fromCache) {
+            this.host = host;
+            this.path = path;
+            this.code = code;
+            this.latencyMs = latencyMs;
+            this.wireBytes = wireBytes;
+            this.bodyBytes = bodyBytes;
+            this.fromCache = fromCache;
+        }
+    }
+
+    private static final String CACHE_DIR = "http";
+    private static final long CACHE_BYTES = 2L * 1024L * 1024L;
+    private static final int MAX_RECENT = 32;
+    // Set by the platform cache on responses it served or revalidated.
+    private static final String RESPONSE_SOURCE = "X-Android-Response-Source";
+
+    private static final Object STATS_LOCK = new Object();
+    private static final ArrayDeque<CallStats> recent = new ArrayDeque<>(MAX_RECENT);
+    private static long totalCalls;
+    private static long totalWireBytes;
+
+    private HttpClient() {}
+
+    @NonNull
+    public static Request get(@NonNull String url) {
+        return new Request(url);
+    }
+
+    /** Installs the on-disk response cache on a background thread; a no-op if already installed. */
+    public static void installCacheAsync(@NonNull Context context) {
+        if (HttpResponseCache.getInstalled() != null) return;
+        final File dir = new File(context.getApplicationContext().getCacheDir(), CACHE_DIR);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    HttpResponseCache.install(dir, CACHE_BYTES);
+                } catch (Throwable ignored) {
+                    // Requests still work, just uncached.
+                }
+            }
+        }, "http-cache").start();
+    }
+
+    /** The most recent calls, oldest first. */
+    @NonNull
+    public static List<CallStats> recentCalls() {
+        synchronized (STATS_LOCK) {
+            return new ArrayList<>(recent);
+        }
+    }
+
+    public static long getTotalCalls() {
+        synchronized (STATS_LOCK) {
+            return totalCalls;
+        }
+    }
+
+    public static long getTotalWireBytes() {
+        synchronized (STATS_LOCK) {
+            return totalWireBytes;
+        }
+    }
+
+    @NonNull
+    private static Response execute(@NonNull Request request) throws IOException {
+        long start = System.nanoTime();
+        URL url = new URL(request.url);
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        boolean reusable = false;
+        try {
+            conn.setConnectTimeout(request.connectTimeoutMs);
+            conn.setReadTimeout(request.readTimeoutMs);
+            conn.setRequestMethod("GET");
+            conn.setUseCaches(true);
+            // Asking explicitly turns off transparent inflation, so the body is inflated below.
+            conn.setRequestProperty("Accept-Encoding", "gzip");
+
+            int code = conn.getResponseCode();
+            InputStream raw = code >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            CountingInputStream counted = raw == null ? null : new CountingInputStream(raw);
+            byte[] body = new byte[0];
+            if (counted != null) {
+                InputStream in = "gzip".equalsIgnoreCase(conn.getContentEncoding())
+                        ? new GZIPInputStream(counted) : counted;
+                try {
+                    body = readFully(in);
+                } finally {
+                    in.close();
+                }
+            }
+            reusable = true;
+
+            String source = conn.getHeaderField(RESPONSE_SOURCE);
+            boolean fromCache = source != null && source.startsWith("CACHE");
+            record(new CallStats(url.getHost(), url.getPath(), code, (System.nanoTime() - start) / 1_000_000L,
+                    counted == null ? 0L : counted.count, body.length, fromCache));
+            return new Response(code, new String(body, StandardCharsets.UTF_8));
+        } finally {
+            // A fully read, closed stream returns the socket to the pool; only drop broken ones.
+            if (!reusable) conn.disconnect();
+        }
+    }
+
+    @NonNull
+    private static byte[] readFully(@NonNull InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) out.write(buf, 0, n);
+        return out.toByteArray();
+    }
+
+    private static void record(@NonNull CallStats stats) {
+        synchronized (STATS_LOCK) {
+            if (recent.size() == MAX_RECENT) recent.removeFirst();
+            recent.addLast(stats);
+            totalCalls++;
+            totalWireBytes += stats.wireBytes;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(@NonNull InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
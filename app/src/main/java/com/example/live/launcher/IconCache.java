@@ -0,0 +1,311 @@
+package com.example.live.launcher;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.live.R;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Two-tier cache of launcher icons, pre-drawn at the size used by item_app.xml.
+ *
+ * Memory tier: LRU bounded by bitmap bytes. Disk tier: one PNG per component and version code,
+ * so icons survive process restarts without decoding the APK again.
+ * Misses can be resolved on a small background pool via {@link #loadAsync(AppCatalog, int, Callback)}.
+ *
+ * Rows are identified by a handle string (component hash plus version code) rather than by
+ * holding drawables in the catalog.
+ */
+public final class IconCache {
+
+    public interface Callback {
+        void onIconLoaded(@NonNull String handle, @Nullable Bitmap icon);
+    }
+
+    private static final String DIR_NAME = "icons";
+    private static final int LOADER_THREADS = 2;
+
+    private static final ExecutorService LOADER = Executors.newFixedThreadPool(LOADER_THREADS, r -> {
+        Thread t = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, "icon-loader");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    private static volatile IconCache INSTANCE;
+
+    private final PackageManager pm;
+    private final File dir;
+    private final int sizePx;
+    private final LruCache<String, Bitmap> memory;
+    // Handle -> callers waiting for the load already queued for it; guarded by itself.
+    private final Map<String, List<Waiter>> inFlight = new HashMap<>();
+
+    private IconCache(@NonNull Context appContext) {
+        this.pm = appContext.getPackageManager();
+        this.dir = new File(appContext.getCacheDir(), DIR_NAME);
+        this.sizePx = appContext.getResources().getDimensionPixelSize(R.dimen.app_icon_size);
+
+        // 1/32 of the heap holds a few hundred icons at xxhdpi; anything beyond that reloads from disk.
+        int maxKb = (int) (Runtime.getRuntime().maxMemory() / 1024L / 32L);
+        this.memory = new LruCache<String, Bitmap>(maxKb) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return Math.max(1, value.getByteCount() / 1024);
+            }
+        };
+    }
+
+    @NonNull
+    public static IconCache get(@NonNull Context context) {
+        IconCache cached = INSTANCE;
+        if (cached != null) return cached;
+        synchronized (IconCache.class) {
+            if (INSTANCE == null) INSTANCE = new IconCache(context.getApplicationContext());
+            return INSTANCE;
+        }
+    }
+
+    /** Identifies the icon of a catalog row; changes when the app is updated. */
+    @NonNull
+    public static String handle(@NonNull AppCatalog catalog, int row) {
+        return componentPrefix(catalog.packageName(row), catalog.className(row)) + catalog.versionCode(row);
+    }
+
+    /** Returns the icon from memory only, or null if it would need disk or PackageManager work. */
+    @Nullable
+    public Bitmap peek(@NonNull String handle) {
+        return memory.get(handle);
+    }
+
+    /** Returns the icon for the row, loading it from disk or drawing it from the APK as needed. */
+    @Nullable
+    public Bitmap getIcon(@NonNull AppCatalog catalog, int row) {
+        String key = handle(catalog, row);
+        Bitmap bmp = memory.get(key);
+        if (bmp != null) return bmp;
+
+        String packageName = catalog.packageName(row);
+        String className = catalog.className(row);
+        File file = new File(dir, key + ".png");
+        bmp = readFromDisk(file);
+        if (bmp == null) {
+            bmp = render(packageName, className);
+            if (bmp == null) return null;
+            writeToDisk(componentPrefix(packageName, className), file, bmp);
+        }
+        memory.put(key, bmp);
+        return bmp;
+    }
+
+    /**
+     * Resolves the icon on the loader pool and delivers it on the main thread, unless the returned
+     * future was cancelled first. A null callback just warms the cache (prefetch).
+     *
+     * Calls for a handle that is already queued (prefetch and bind of the same row) join that load
+     * instead of starting another; cancelling one caller only drops its own delivery.
+     */
+    @NonNull
+    public Future<?> loadAsync(@NonNull final AppCatalog catalog, final int row, @Nullable Callback cb) {
+        final String key = handle(catalog, row);
+        Waiter waiter = new Waiter(new Delivery(key, cb));
+        boolean start;
+        synchronized (inFlight) {
+            List<Waiter> waiters = inFlight.get(key);
+            start = waiters == null;
+            if (start) {
+                waiters = new ArrayList<>(2);
+                inFlight.put(key, waiters);
+            }
+            waiters.add(waiter);
+        }
+        if (start) {
+            LOADER.execute(new Runnable() {
+                @Override
+                public void run() {
+                    load(key, catalog, row);
+                }
+            });
+        }
+        return waiter;
+    }
+
+    private void load(@NonNull String key, @NonNull AppCatalog catalog, int row) {
+        synchronized (inFlight) {
+            // Everyone scrolled past before the load started: skip the work.
+            if (allCancelled(inFlight.get(key))) {
+                inFlight.remove(key);
+                return;
+            }
+        }
+
+        Bitmap bmp = null;
+        try {
+            bmp = getIcon(catalog, row);
+        } catch (Throwable ignored) {
+        }
+
+        List<Waiter> done;
+        synchronized (inFlight) {
+            done = inFlight.remove(key);
+        }
+        if (done == null) return;
+        for (Waiter w : done) {
+            if (w.isCancelled()) continue;
+            w.delivery.icon = bmp;
+            if (w.delivery.cb == null) w.run();
+            else MAIN.post(w);
+        }
+    }
+
+    private static boolean allCancelled(@Nullable List<Waiter> waiters) {
+        if (waiters == null) return true;
+        for (Waiter w : waiters) {
+            if (!w.isCancelled()) return false;
+        }
+        return true;
+    }
+
+    /** One caller's delivery; runs on the main thread unless cancelled. */
+    private static final class Delivery implements Runnable {
+        final String handle;
+        @Nullable final Callback cb;
+        volatile Bitmap icon;
+
+        Delivery(@NonNull String handle, @Nullable Callback cb) {
+            this.handle = handle;
+            this.cb = cb;
+        }
+
+        @Override
+        public void run() {
+            if (cb != null) cb.onIconLoaded(handle, icon);
+        }
+    }
+
+    private static final class Waiter extends FutureTask<Void> {
+        final Delivery delivery;
+
+        Waiter(@NonNull Delivery delivery) {
+            super(delivery, null);
+            this.delivery = delivery;
+        }
+    }
+
+    /**
+     * Drops every cached render of the package, in memory and on disk. Called when the package is
+     * updated or removed; touches the disk, so call off the main thread.
+     */
+    public void evict(@NonNull final String packageName) {
+        for (String key : memory.snapshot().keySet()) {
+            if (belongsTo(key, packageName)) memory.remove(key);
+        }
+        File[] files = dir.listFiles((d, name) -> belongsTo(name, packageName));
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+    }
+
+    @Nullable
+    private Bitmap render(@NonNull String packageName, @NonNull String className) {
+        Drawable d;
+        try {
+            d = pm.getActivityIcon(new ComponentName(packageName, className));
+        } catch (Throwable t) {
+            try {
+                d = pm.getApplicationIcon(packageName);
+            } catch (Throwable t2) {
+                return null;
+            }
+        }
+
+        Bitmap out = Bitmap.createBitmap(sizePx, sizePx, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(out);
+        d.setBounds(0, 0, sizePx, sizePx);
+        d.draw(canvas);
+        return out;
+    }
+
+    @Nullable
+    private Bitmap readFromDisk(@NonNull File file) {
+        if (!file.isFile()) return null;
+        try {
+            Bitmap bmp = BitmapFactory.decodeFile(file.getAbsolutePath());
+            // A density change makes old renders the wrong size; redraw instead of scaling.
+            if (bmp != null && bmp.getWidth() == sizePx) return bmp;
+        } catch (Throwable ignored) {
+        }
+        return null;
+    }
+
+    private void writeToDisk(@NonNull final String prefix, @NonNull File file, @NonNull Bitmap bmp) {
+        if (!dir.isDirectory() && !dir.mkdirs()) return;
+
+        // Drop renders of older versions of the same component, but not this version's file or
+        // another thread's write in progress.
+        final String target = file.getName();
+        File[] stale = dir.listFiles((d, name) -> name.startsWith(prefix) && !name.equals(target)
+                && !name.endsWith(".tmp"));
+        if (stale != null) {
+            for (File f : stale) f.delete();
+        }
+
+        // Per-thread temp name, so two writers of the same icon never share a half-written file.
+        File tmp = new File(dir, target + "." + Thread.currentThread().getId() + ".tmp");
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(tmp);
+            bmp.compress(Bitmap.CompressFormat.PNG, 100, fos);
+            fos.close();
+            fos = null;
+            if (!tmp.renameTo(file)) tmp.delete();
+        } catch (Throwable t) {
+            tmp.delete();
+        } finally {
+            if (fos != null) {
+                try { fos.close(); } catch (Throwable ignored) {}
+            }
+        }
+    }
+
+    /** Matches keys and file names of this package only, not of "pkg_suffix" packages. */
+    private static boolean belongsTo(@NonNull String name, @NonNull String packageName) {
+        if (!name.startsWith(packageName + "_")) return false;
+        // The rest is "<hex>_<version>[.png]"; another package's name would bring a '.' or '_'.
+        String rest = name.substring(packageName.length() + 1);
+        if (rest.endsWith(".png")) rest = rest.substring(0, rest.length() - 4);
+        int sep = rest.indexOf('_');
+        return sep > 0 && sep == rest.lastIndexOf('_') && rest.indexOf('.') < 0;
+    }
+
+    @NonNull
+    private static String componentPrefix(@NonNull String packageName, @NonNull String className) {
+        // Class names can be long; a hash keeps file names short and filesystem-safe.
+        return packageName + "_" + Integer.toHexString(className.hashCode()) + "_";
+    }
+}
@@ -0,0 +1,615 @@
+package com.example.live.launcher;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.KeyStore;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Write-ahead journal in front of the encrypted preferences file.
+ *
+ * Every {@link Editor#apply()} lands in an in-memory overlay at once and is appended to a small
+ * journal as one AES-GCM record (sealed with an Android Keystore key), instead of rewriting the
+ * whole encrypted file. The journal is folded into the main file with a single commit once it
+ * holds {@link #COMPACT_RECORDS} records or {@link #COMPACT_BYTES} bytes, or when {@link #flush()}
+ * is called (from onPause).
+ *
+ * On open, the journal is replayed over the main file; a record torn by a crash mid-append fails
+ * its length or authentication check, is dropped together with anything after it, and the file is
+ * truncated back to the last whole record.
+ */
+final class JournaledPrefs implements SharedPreferences {
+
+    private static final String TAG = "JournaledPrefs";
+    private static final String JOURNAL_FILE = "secure_prefs.journal";
+    private static final String KEY_ALIAS = "launcher_prefs_journal";
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int TAG_BITS = 128;
+
+    private static final int COMPACT_RECORDS = 32;
+    private static final long COMPACT_BYTES = 16 * 1024;
+    // A record is one editor's changes; anything larger than this is a torn length prefix.
+    private static final int MAX_RECORD_BYTES = 256 * 1024;
+
+    private static final byte OP_STRING = 1;
+    private static final byte OP_INT = 2;
+    private static final byte OP_LONG = 3;
+    private static final byte OP_FLOAT = 4;
+    private static final byte OP_BOOLEAN = 5;
+    private static final byte OP_STRING_SET = 6;
+    private static final byte OP_REMOVE = 7;
+
+    // Overlay value for a key removed since the last compaction.
+    private static final Object REMOVED = new Object();
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    private final SharedPreferences main;
+    private final File journalFile;
+    private final SecretKey key;
+    private final ExecutorService io = Executors.newSingleThreadExecutor(r -> new Thread(r, "prefs-journal"));
+    private final List<OnSharedPreferenceChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Object lock = new Object();
+    // Changes not yet in the main file; guarded by lock.
+    private final Map<String, Object> overlay = new HashMap<>();
+    // True while a clear() has not reached the main file; hides every main-file value.
+    private boolean cleared;
+    private int clears;
+
+    // IO thread only.
+    private int journalRecords;
+
+    private JournaledPrefs(@NonNull SharedPreferences main, @NonNull File journalFile, @NonNull SecretKey key) {
+        this.main = main;
+        this.journalFile = journalFile;
+        this.key = key;
+    }
+
+    /**
+     * Wraps {@code main}, replaying any journal left by the previous process. Returns {@code main}
+     * itself if the journal key cannot be obtained, so writes fall back to plain applies; any old
+     * journal is deleted then, since replaying it on a later launch would undo those writes.
+     */
+    @NonNull
+    static SharedPreferences open(@NonNull Context appContext, @NonNull SharedPreferences main) {
+        File journalFile = new File(appContext.getNoBackupFilesDir(), JOURNAL_FILE);
+        SecretKey key;
+        try {
+            key = journalKey();
+        } catch (Throwable t) {
+            Log.w(TAG, "Journal key unavailable; writing through", t);
+            if (journalFile.exists() && !journalFile.delete()) Log.w(TAG, "Could not delete stale journal");
+            return main;
+        }
+        JournaledPrefs prefs = new JournaledPrefs(main, journalFile, key);
+        if (prefs.replay() > 0) prefs.flush();
+        return prefs;
+    }
+
+    /**
+     * Barrier: once the IO thread reaches it, every change applied before this call is in the main
+     * file. Does not block the caller.
+     */
+    void flush() {
+        io.execute(new Runnable() {
+            @Override
+            public void run() {
+                compact();
+            }
+        });
+    }
+
+    // ---- Reads ----
+
+    @Override
+    public Map<String, ?> getAll() {
+        Map<String, Object> all;
+        synchronized (lock) {
+            all = cleared ? new HashMap<>() : new HashMap<String, Object>(main.getAll());
+            for (Map.Entry<String, Object> e : overlay.entrySet()) {
+                if (e.getValue() == REMOVED) all.remove(e.getKey());
+                else all.put(e.getKey(), e.getValue());
+            }
+        }
+        return all;
+    }
+
+    @Nullable
+    @Override
+    public String getString(String key, @Nullable String defValue) {
+        Object v = pending(key);
+        if (v == null) return main.getString(key, defValue);
+        return v == REMOVED ? defValue : (String) v;
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+        Object v = pending(key);
+        if (v == null) return main.getStringSet(key, defValues);
+        return v == REMOVED ? defValues : (Set<String>) v;
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        Object v = pending(key);
+        if (v == null) return main.getInt(key, defValue);
+        return v == REMOVED ? defValue : (Integer) v;
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        Object v = pending(key);
+        if (v == null) return main.getLong(key, defValue);
+        return v == REMOVED ? defValue : (Long) v;
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        Object v = pending(key);
+        if (v == null) return main.getFloat(key, defValue);
+        return v == REMOVED ? defValue : (Float) v;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        Object v = pending(key);
+        if (v == null) return main.getBoolean(key, defValue);
+        return v == REMOVED ? defValue : (Boolean) v;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        Object v = pending(key);
+        if (v == null) return main.contains(key);
+        return v != REMOVED;
+    }
+
+    @Override
+    public Editor edit() {
+        return new JournalEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        if (!listeners.contains(listener)) listeners.add(listener);
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /** The overlay value for {@code key}, {@link #REMOVED}, or null to read the main file. */
+    @Nullable
+    private Object pending(String key) {
+        synchronized (lock) {
+            Object v = overlay.get(key);
+            if (v != null) return v;
+            return cleared ? REMOVED : null;
+        }
+    }
+
+    // ---- Writes ----
+
+    private final class JournalEditor implements Editor {
+        private final Map<String, Object> changes = new LinkedHashMap<>();
+        private boolean clear;
+
+        @Override
+        public Editor putString(String key, @Nullable String value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putStringSet(String key, @Nullable Set<String> values) {
+            return put(key, values == null ? null : new HashSet<>(values));
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor remove(String key) {
+            return put(key, null);
+        }
+
+        @Override
+        public Editor clear() {
+            clear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            Future<Boolean> written = write();
+            if (written == null) return true;
+            try {
+                return written.get();
+            } catch (Throwable t) {
+                return false;
+            }
+        }
+
+        @Override
+        public void apply() {
+            write();
+        }
+
+        private Editor put(String key, @Nullable Object value) {
+            synchronized (this) {
+                changes.put(key, value == null ? REMOVED : value);
+            }
+            return this;
+        }
+
+        @Nullable
+        private Future<Boolean> write() {
+            final Map<String, Object> batch;
+            final boolean batchClear;
+            synchronized (this) {
+                if (changes.isEmpty() && !clear) return null;
+                batch = new LinkedHashMap<>(changes);
+                batchClear = clear;
+                changes.clear();
+                clear = false;
+            }
+
+            Future<Boolean> written;
+            // Encoded and submitted under the lock so journal records are appended in overlay order;
+            // otherwise an older batch could land after a newer one and win on replay.
+            synchronized (lock) {
+                if (batchClear) {
+                    overlay.clear();
+                    cleared = true;
+                    clears++;
+                }
+                overlay.putAll(batch);
+                final byte[] record = encode(batch, batchClear);
+                written = io.submit(() -> append(record));
+            }
+            notifyListeners(batch);
+            return written;
+        }
+    }
+
+    private void notifyListeners(@NonNull final Map<String, Object> batch) {
+        if (listeners.isEmpty()) return;
+        MAIN.post(new Runnable() {
+            @Override
+            public void run() {
+                for (String k : batch.keySet()) {
+                    for (OnSharedPreferenceChangeListener l : listeners) l.onSharedPreferenceChanged(JournaledPrefs.this, k);
+                }
+            }
+        });
+    }
+
+    // ---- Journal (IO thread) ----
+
+    private boolean append(@NonNull byte[] record) {
+        boolean ok = false;
+        DataOutputStream out = null;
+        try {
+            byte[] sealed = seal(record);
+            // One write call per record; the bytes reach the kernel even if the process dies next.
+            ByteArrayOutputStream frame = new ByteArrayOutputStream(sealed.length + 4);
+            new DataOutputStream(frame).writeInt(sealed.length);
+            frame.write(sealed);
+            out = new DataOutputStream(new FileOutputStream(journalFile, true));
+            frame.writeTo(out);
+            out.close();
+            out = null;
+            ok = true;
+            journalRecords++;
+        } catch (Throwable t) {
+            Log.w(TAG, "Journal append failed; compacting now", t);
+        } finally {
+            if (out != null) {
+                try { out.close(); } catch (Throwable ignored) {}
+            }
+        }
+        // A failed append is made durable by folding the overlay straight into the main file.
+        if (!ok || journalRecords >= COMPACT_RECORDS || journalFile.length() >= COMPACT_BYTES) {
+            boolean compacted = compact();
+            return ok || compacted;
+        }
+        return true;
+    }
+
+    /** Folds the overlay into the main file with one commit, then drops the journal. */
+    private boolean compact() {
+        final Map<String, Object> snapshot;
+        final boolean snapshotCleared;
+        final int snapshotClears;
+        synchronized (lock) {
+            if (overlay.isEmpty() && !cleared) {
+                if (journalRecords > 0 || journalFile.exists()) resetJournal();
+                return true;
+            }
+            snapshot = new HashMap<>(overlay);
+            snapshotCleared = cleared;
+            snapshotClears = clears;
+        }
+
+        Editor ed = main.edit();
+        if (snapshotCleared) ed.clear();
+        for (Map.Entry<String, Object> e : snapshot.entrySet()) putTyped(ed, e.getKey(), e.getValue());
+        // Keep the journal if the main file could not be written; it is replayed next launch.
+        if (!ed.commit()) return false;
+
+        resetJournal();
+        synchronized (lock) {
+            // Drop only what was committed; later changes stay in the overlay (and the new journal).
+            for (Map.Entry<String, Object> e : snapshot.entrySet()) {
+                if (overlay.get(e.getKey()) == e.getValue()) overlay.remove(e.getKey());
+            }
+            if (clears == snapshotClears) cleared = false;
+        }
+        return true;
+    }
+
+    private void resetJournal() {
+        //noinspection ResultOfMethodCallIgnored
+        journalFile.delete();
+        journalRecords = 0;
+    }
+
+    /** Applies whole journal records to the overlay and truncates a torn tail; returns the count. */
+    private int replay() {
+        if (!journalFile.exists()) return 0;
+        long valid = 0;
+        int count = 0;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+            while (true) {
+                int len;
+                try {
+                    len = in.readInt();
+                } catch (EOFException end) {
+                    break;
+                }
+                if (len <= 0 || len > MAX_RECORD_BYTES) break;
+                byte[] sealed = new byte[len];
+                in.readFully(sealed);
+                decode(unseal(sealed));
+                valid += 4 + len;
+                count++;
+            }
+        } catch (Throwable t) {
+            // Torn or unreadable record (e.g. after a crash mid-append): keep what came before it.
+            Log.w(TAG, "Journal replay stopped after " + count + " records", t);
+        } finally {
+            if (in != null) {
+                try { in.close(); } catch (Throwable ignored) {}
+            }
+        }
+
+        if (valid < journalFile.length()) {
+            RandomAccessFile raf = null;
+            try {
+                raf = new RandomAccessFile(journalFile, "rw");
+                raf.setLength(valid);
+            } catch (Throwable ignored) {
+            } finally {
+                if (raf != null) {
+                    try { raf.close(); } catch (Throwable ignored) {}
+                }
+            }
+        }
+        journalRecords = count;
+        return count;
+    }
+
+    // ---- Record format ----
+
+    @NonNull
+    private static byte[] encode(@NonNull Map<String, Object> batch, boolean clear) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + batch.size() * 48);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeBoolean(clear);
+            out.writeInt(batch.size());
+            for (Map.Entry<String, Object> e : batch.entrySet()) {
+                Object v = e.getValue();
+                if (v == REMOVED) {
+                    out.writeByte(OP_REMOVE);
+                    out.writeUTF(e.getKey());
+                } else if (v instanceof String) {
+                    out.writeByte(OP_STRING);
+                    out.writeUTF(e.getKey());
+                    writeLongString(out, (String) v);
+                } else if (v instanceof Integer) {
+                    out.writeByte(OP_INT);
+                    out.writeUTF(e.getKey());
+                    out.writeInt((Integer) v);
+                } else if (v instanceof Long) {
+                    out.writeByte(OP_LONG);
+                    out.writeUTF(e.getKey());
+                    out.writeLong((Long) v);
+                } else if (v instanceof Float) {
+                    out.writeByte(OP_FLOAT);
+                    out.writeUTF(e.getKey());
+                    out.writeFloat((Float) v);
+                } else if (v instanceof Boolean) {
+                    out.writeByte(OP_BOOLEAN);
+                    out.writeUTF(e.getKey());
+                    out.writeBoolean((Boolean) v);
+                } else {
+                    @SuppressWarnings("unchecked") Set<String> set = (Set<String>) v;
+                    out.writeByte(OP_STRING_SET);
+                    out.writeUTF(e.getKey());
+                    out.writeInt(set.size());
+                    for (String s : set) writeLongString(out, s);
+                }
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // In-memory streams do not throw.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void decode(@NonNull byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        boolean clear = in.readBoolean();
+        int count = in.readInt();
+        Map<String, Object> batch = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            byte op = in.readByte();
+            String k = in.readUTF();
+            switch (op) {
+                case OP_REMOVE: batch.put(k, REMOVED); break;
+                case OP_STRING: batch.put(k, readLongString(in)); break;
+                case OP_INT: batch.put(k, in.readInt()); break;
+                case OP_LONG: batch.put(k, in.readLong()); break;
+                case OP_FLOAT: batch.put(k, in.readFloat()); break;
+                case OP_BOOLEAN: batch.put(k, in.readBoolean()); break;
+                case OP_STRING_SET: {
+                    int n = in.readInt();
+                    Set<String> set = new HashSet<>(n * 2);
+                    for (int j = 0; j < n; j++) set.add(readLongString(in));
+                    batch.put(k, set);
+                    break;
+                }
+                default: throw new IOException("Unknown journal op " + op);
+            }
+        }
+        // Only a fully decoded record touches the overlay.
+        synchronized (lock) {
+            if (clear) {
+                overlay.clear();
+                cleared = true;
+                clears++;
+            }
+            overlay.putAll(batch);
+        }
+    }
+
+    private static void putTyped(@NonNull Editor ed, @NonNull String k, @NonNull Object v) {
+        if (v == REMOVED) ed.remove(k);
+        else if (v instanceof String) ed.putString(k, (String) v);
+        else if (v instanceof Integer) ed.putInt(k, (Integer) v);
+        else if (v instanceof Long) ed.putLong(k, (Long) v);
+        else if (v instanceof Float) ed.putFloat(k, (Float) v);
+        else if (v instanceof Boolean) ed.putBoolean(k, (Boolean) v);
+        else {
+            @SuppressWarnings("unchecked") Set<String> set = (Set<String>) v;
+            ed.putStringSet(k, set);
+        }
+    }
+
+    // writeUTF caps at 64 KB; record blobs may be longer.
+    private static void writeLongString(@NonNull DataOutputStream out, @NonNull String s) throws IOException {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    @NonNull
+    private static String readLongString(@NonNull DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0 || len > MAX_RECORD_BYTES) throw new IOException("Bad string length " + len);
+        byte[] utf8 = new byte[len];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    // ---- Encryption ----
+
+    /** iv length (1 byte) + iv + ciphertext with GCM tag. */
+    @NonNull
+    private byte[] seal(@NonNull byte[] plain) throws Exception {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        byte[] iv = cipher.getIV();
+        byte[] ct = cipher.doFinal(plain);
+        byte[] out = new byte[1 + iv.length + ct.length];
+        out[0] = (byte) iv.length;
+        System.arraycopy(iv, 0, out, 1, iv.length);
+        System.arraycopy(ct, 0, out, 1 + iv.length, ct.length);
+        return out;
+    }
+
+    @NonNull
+    private byte[] unseal(@NonNull byte[] sealed) throws Exception {
+        int ivLen = sealed[0] & 0xff;
+        if (ivLen == 0 || 1 + ivLen >= sealed.length) throw new IOException("Bad journal record");
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, sealed, 1, ivLen));
+        return cipher.doFinal(sealed, 1 + ivLen, sealed.length - 1 - ivLen);
+    }
+
+    @NonNull
+    private static SecretKey journalKey() throws Exception {
+        KeyStore ks = KeyStore.getInstance(KEYSTORE);
+        ks.load(null);
+        Key existing = ks.getKey(KEY_ALIAS, null);
+        if (existing instanceof SecretKey) return (SecretKey) existing;
+
+        KeyGenerator gen = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+        gen.init(new KeyGenParameterSpec.Builder(KEY_ALIAS, KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return gen.generateKey();
+    }
+}
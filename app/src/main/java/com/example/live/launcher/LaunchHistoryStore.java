@@ -0,0 +1,356 @@
+package com.example.live.launcher;
+
+import android.content.Context;
+import android.util.AtomicFile;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local launch history: one exponentially decayed score per package.
+ *
+ * Scores live in an open-addressing table keyed by the package name's hash, so a lookup is O(1)
+ * with no boxing. Launches are appended to a small log in batches; once the log grows past a few
+ * KB it is folded into a compact snapshot holding at most {@link #MAX_ENTRIES} packages.
+ *
+ * The files are read on the IO thread the first time the store is used; until then every score is
+ * 0, and launches recorded meanwhile are applied on top of the loaded history.
+ */
+public final class LaunchHistoryStore {
+
+    public interface Ranker {
+        /** Higher is more likely to be launched next; 0 for never/long ago. */
+        float score(@NonNull String packageName);
+    }
+
+    private static final String SNAPSHOT_FILE = "launch_history.snap";
+    private static final String LOG_FILE = "launch_history.log";
+    private static final int FORMAT_VERSION = 1;
+
+    // A launch counts half as much after a week.
+    private static final double HALF_LIFE_MINUTES = 7d * 24d * 60d;
+    private static final int MAX_ENTRIES = 128;
+    private static final int FLUSH_BATCH = 8;
+    // Log records are 8 bytes; fold into the snapshot after ~512 launches.
+    private static final long MAX_LOG_BYTES = 4 * 1024;
+
+    private static volatile LaunchHistoryStore INSTANCE;
+    private static final ExecutorService IO = Executors.newSingleThreadExecutor(r -> new Thread(r, "launch-history"));
+
+    private final File logFile;
+    private final AtomicFile snapshotFile;
+
+    // Open-addressing table; key 0 marks an empty slot.
+    private int[] keys = new int[64];
+    private float[] scores = new float[64];
+    private int[] minutes = new int[64];
+    private int size;
+    // False until the IO thread has read the files; the table stays empty until then.
+    private boolean loaded;
+
+    // Launches not yet written: pairs of (key, minute).
+    private int[] pending = new int[FLUSH_BATCH * 2];
+    private int pendingCount;
+    // Flushed batches the IO thread has not appended yet. A compaction clears them, since its
+    // snapshot already covers them; appending them afterwards would count them twice.
+    private final List<int[]> queued = new ArrayList<>();
+
+    private LaunchHistoryStore(@NonNull Context appContext) {
+        File dir = appContext.getFilesDir();
+        this.logFile = new File(dir, LOG_FILE);
+        this.snapshotFile = new AtomicFile(new File(dir, SNAPSHOT_FILE));
+        // Queued first, so every append and compaction on the IO thread sees the loaded table.
+        IO.execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    @NonNull
+    public static LaunchHistoryStore get(@NonNull Context context) {
+        LaunchHistoryStore cached = INSTANCE;
+        if (cached != null) return cached;
+        synchronized (LaunchHistoryStore.class) {
+            if (INSTANCE == null) INSTANCE = new LaunchHistoryStore(context.getApplicationContext());
+            return INSTANCE;
+        }
+    }
+
+    public synchronized void recordLaunch(@NonNull String packageName) {
+        int key = keyOf(packageName);
+        int now = nowMinutes();
+        // Before the load, the launch is only buffered; load() applies it after the history.
+        if (loaded) apply(key, now);
+
+        if (pendingCount * 2 == pending.length) pending = Arrays.copyOf(pending, pending.length * 2);
+        pending[pendingCount * 2] = key;
+        pending[pendingCount * 2 + 1] = now;
+        pendingCount++;
+        if (pendingCount >= FLUSH_BATCH) flush();
+    }
+
+    public synchronized float score(@NonNull String packageName) {
+        if (!loaded) return 0f;
+        int slot = find(keyOf(packageName));
+        if (slot < 0) return 0f;
+        return decayed(scores[slot], minutes[slot], nowMinutes());
+    }
+
+    @NonNull
+    public Ranker ranker() {
+        return new Ranker() {
+            @Override
+            public float score(@NonNull String packageName) {
+                return LaunchHistoryStore.this.score(packageName);
+            }
+        };
+    }
+
+    /** Writes buffered launches on the IO thread. Call from onPause. */
+    public synchronized void flush() {
+        if (pendingCount == 0) return;
+        queued.add(Arrays.copyOf(pending, pendingCount * 2));
+        pendingCount = 0;
+        IO.execute(new Runnable() {
+            @Override
+            public void run() {
+                append();
+            }
+        });
+    }
+
+    /** Appends every queued batch; runs on the IO thread only. */
+    private void append() {
+        List<int[]> batches;
+        synchronized (this) {
+            if (queued.isEmpty()) return;
+            batches = new ArrayList<>(queued);
+            queued.clear();
+        }
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true)));
+            for (int[] batch : batches) {
+                for (int i = 0; i < batch.length; i += 2) {
+                    out.writeInt(batch[i]);
+                    out.writeInt(batch[i + 1]);
+                }
+            }
+            out.close();
+            out = null;
+        } catch (Throwable ignored) {
+        } finally {
+            if (out != null) {
+                try { out.close(); } catch (Throwable ignored) {}
+            }
+        }
+        if (logFile.length() > MAX_LOG_BYTES) compact();
+    }
+
+    private void compact() {
+        int[] k;
+        float[] s;
+        int[] m;
+        synchronized (this) {
+            // Launches still buffered or queued are already in the table, so the snapshot covers
+            // them too. Later batches hold only launches recorded after this point.
+            pendingCount = 0;
+            queued.clear();
+            trimToMaxEntries();
+            k = keys.clone();
+            s = scores.clone();
+            m = minutes.clone();
+        }
+
+        FileOutputStream fos = null;
+        try {
+            fos = snapshotFile.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(FORMAT_VERSION);
+            int count = 0;
+            for (int key : k) if (key != 0) count++;
+            out.writeInt(count);
+            for (int i = 0; i < k.length; i++) {
+                if (k[i] == 0) continue;
+                out.writeInt(k[i]);
+                out.writeFloat(s[i]);
+                out.writeInt(m[i]);
+            }
+            out.flush();
+            snapshotFile.finishWrite(fos);
+            // Everything in the log is now reflected in the snapshot.
+            logFile.delete();
+        } catch (Throwable t) {
+            if (fos != null) snapshotFile.failWrite(fos);
+        }
+    }
+
+    /** Reads the snapshot and log without holding the lock, then fills the table; IO thread only. */
+    private void load() {
+        int[] snapKeys = new int[0];
+        float[] snapScores = new float[0];
+        int[] snapMinutes = new int[0];
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(snapshotFile.openRead()));
+            if (in.readInt() == FORMAT_VERSION) {
+                int count = Math.max(0, Math.min(in.readInt(), MAX_ENTRIES * 4));
+                snapKeys = new int[count];
+                snapScores = new float[count];
+                snapMinutes = new int[count];
+                for (int i = 0; i < count; i++) {
+                    snapKeys[i] = in.readInt();
+                    snapScores[i] = in.readFloat();
+                    snapMinutes[i] = in.readInt();
+                }
+            }
+        } catch (Throwable ignored) {
+            snapKeys = new int[0];
+        } finally {
+            if (in != null) {
+                try { in.close(); } catch (Throwable ignored) {}
+            }
+        }
+
+        // Pairs of (key, minute).
+        int[] log = new int[64];
+        int logCount = 0;
+        in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+            while (true) {
+                int key = in.readInt();
+                int minute = in.readInt();
+                if (logCount * 2 == log.length) log = Arrays.copyOf(log, log.length * 2);
+                log[logCount * 2] = key;
+                log[logCount * 2 + 1] = minute;
+                logCount++;
+            }
+        } catch (EOFException eof) {
+            // End of log (a torn trailing record is simply dropped).
+        } catch (Throwable ignored) {
+        } finally {
+            if (in != null) {
+                try { in.close(); } catch (Throwable ignored) {}
+            }
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < snapKeys.length; i++) put(snapKeys[i], snapScores[i], snapMinutes[i]);
+            for (int i = 0; i < logCount; i++) apply(log[i * 2], log[i * 2 + 1]);
+            // Launches recorded before the load, oldest first: flushed batches, then the buffer.
+            for (int[] batch : queued) {
+                for (int i = 0; i < batch.length; i += 2) apply(batch[i], batch[i + 1]);
+            }
+            for (int i = 0; i < pendingCount; i++) apply(pending[i * 2], pending[i * 2 + 1]);
+            loaded = true;
+        }
+    }
+
+    private void apply(int key, int minute) {
+        int slot = find(key);
+        if (slot < 0) {
+            put(key, 1f, minute);
+            return;
+        }
+        scores[slot] = decayed(scores[slot], minutes[slot], minute) + 1f;
+        minutes[slot] = Math.max(minutes[slot], minute);
+    }
+
+    private void put(int key, float score, int minute) {
+        if ((size + 1) * 2 > keys.length) rehash(keys.length * 2);
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) slot = (slot + 1) & mask;
+        if (keys[slot] == 0) size++;
+        keys[slot] = key;
+        scores[slot] = score;
+        minutes[slot] = minute;
+    }
+
+    private int find(int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        float[] oldScores = scores;
+        int[] oldMinutes = minutes;
+        keys = new int[capacity];
+        scores = new float[capacity];
+        minutes = new int[capacity];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) put(oldKeys[i], oldScores[i], oldMinutes[i]);
+        }
+    }
+
+    private void trimToMaxEntries() {
+        if (size <= MAX_ENTRIES) return;
+        int now = nowMinutes();
+        float[] current = new float[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) current[n++] = decayed(scores[i], minutes[i], now);
+        }
+        Arrays.sort(current);
+        float cutoff = current[size - MAX_ENTRIES];
+
+        int[] oldKeys = keys;
+        float[] oldScores = scores;
+        int[] oldMinutes = minutes;
+        keys = new int[oldKeys.length];
+        scores = new float[oldKeys.length];
+        minutes = new int[oldKeys.length];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0 && decayed(oldScores[i], oldMinutes[i], now) >= cutoff && size < MAX_ENTRIES) {
+                put(oldKeys[i], oldScores[i], oldMinutes[i]);
+            }
+        }
+    }
+
+    private static float decayed(float score, int fromMinute, int toMinute) {
+        int elapsed = toMinute - fromMinute;
+        if (elapsed <= 0) return score;
+        return (float) (score * Math.pow(2d, -elapsed / HALF_LIFE_MINUTES));
+    }
+
+    private static int keyOf(@NonNull String packageName) {
+        int h = packageName.hashCode();
+        return h == 0 ? 1 : h;
+    }
+
+    private static int mix(int h) {
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h;
+    }
+
+    private static int nowMinutes() {
+        return (int) (System.currentTimeMillis() / 60_000L);
+    }
+}
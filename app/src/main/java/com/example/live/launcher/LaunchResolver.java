@@ -0,0 +1,148 @@
+package com.example.live.launcher;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches resolved launch targets so a tap builds an explicit intent without a PackageManager
+ * round trip.
+ *
+ * Per-package components are filled from the catalog scan; the home page essentials are resolved
+ * once (ideally off the main thread via {@link #warmEssentials(Context)}). Package change events
+ * call {@link #invalidate(String)}.
+ */
+public final class LaunchResolver {
+
+    public enum Essential {
+        PHONE,
+        MESSAGES,
+        GMAIL
+    }
+
+    private static final String GMAIL_PACKAGE = "com.google.android.gm";
+
+    private static final Object LOCK = new Object();
+    private static final Map<String, ComponentName> byPackage = new HashMap<>();
+    private static final Map<Essential, Intent> essentials = new EnumMap<>(Essential.class);
+
+    private LaunchResolver() {}
+
+    /**
+     * Replaces the per-package cache from a catalog scan, in PackageManager's resolve order so the
+     * first launcher activity wins, matching getLaunchIntentForPackage.
+     */
+    static void remember(@NonNull List<AppInfo> apps) {
+        synchronized (LOCK) {
+            byPackage.clear();
+            for (AppInfo app : apps) {
+                if (!byPackage.containsKey(app.packageName)) {
+                    byPackage.put(app.packageName, new ComponentName(app.packageName, app.className));
+                }
+            }
+        }
+    }
+
+    /** Explicit intent for a catalog entry; needs no PackageManager call. */
+    @NonNull
+    public static Intent launchIntentFor(@NonNull AppInfo app) {
+        return explicitLaunch(new ComponentName(app.packageName, app.className));
+    }
+
+    /** Launch intent for a package, from the cache when possible. */
+    @Nullable
+    public static Intent launchIntentFor(@NonNull Context context, @NonNull String packageName) {
+        ComponentName cn;
+        synchronized (LOCK) {
+            cn = byPackage.get(packageName);
+        }
+        if (cn != null) return explicitLaunch(cn);
+
+        Intent resolved = context.getPackageManager().getLaunchIntentForPackage(packageName);
+        if (resolved == null || resolved.getComponent() == null) return resolved;
+        synchronized (LOCK) {
+            byPackage.put(packageName, resolved.getComponent());
+        }
+        return resolved;
+    }
+
+    @Nullable
+    public static Intent essentialIntent(@NonNull Context context, @NonNull Essential essential) {
+        synchronized (LOCK) {
+            Intent cached = essentials.get(essential);
+            if (cached != null) return new Intent(cached);
+        }
+
+        Intent resolved = resolveEssential(context.getApplicationContext(), essential);
+        if (resolved == null) return null;
+        synchronized (LOCK) {
+            essentials.put(essential, resolved);
+        }
+        return new Intent(resolved);
+    }
+
+    /** Resolves all essentials on a background thread so the first tap is already cached. */
+    public static void warmEssentials(@NonNull Context context) {
+        final Context appContext = context.getApplicationContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (Essential e : Essential.values()) essentialIntent(appContext, e);
+            }
+        }, "launch-resolver").start();
+    }
+
+    public static void invalidate(@NonNull String packageName) {
+        synchronized (LOCK) {
+            byPackage.remove(packageName);
+            // Default handlers (dialer, SMS, email) may have moved to or from this package.
+            essentials.clear();
+        }
+    }
+
+    @Nullable
+    private static Intent resolveEssential(@NonNull Context context, @NonNull Essential essential) {
+        Intent implicit;
+        if (essential == Essential.PHONE) {
+            implicit = new Intent(Intent.ACTION_DIAL);
+        } else if (essential == Essential.MESSAGES) {
+            implicit = new Intent(Intent.ACTION_MAIN);
+            implicit.addCategory(Intent.CATEGORY_APP_MESSAGING);
+        } else {
+            Intent gmail = launchIntentFor(context, GMAIL_PACKAGE);
+            if (gmail != null) return gmail;
+            implicit = new Intent(Intent.ACTION_MAIN);
+            implicit.addCategory(Intent.CATEGORY_APP_EMAIL);
+        }
+        implicit.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+
+        try {
+            ResolveInfo ri = context.getPackageManager().resolveActivity(implicit, PackageManager.MATCH_DEFAULT_ONLY);
+            // A chooser/resolver activity means there is no single default; keep the implicit intent.
+            if (ri != null && ri.activityInfo != null && !"android".equals(ri.activityInfo.packageName)) {
+                implicit.setComponent(new ComponentName(ri.activityInfo.packageName, ri.activityInfo.name));
+            }
+        } catch (Throwable ignored) {
+        }
+        return implicit;
+    }
+
+    @NonNull
+    private static Intent explicitLaunch(@NonNull ComponentName cn) {
+        Intent intent = new Intent(Intent.ACTION_MAIN);
+        intent.addCategory(Intent.CATEGORY_LAUNCHER);
+        intent.setComponent(cn);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED);
+        return intent;
+    }
+}
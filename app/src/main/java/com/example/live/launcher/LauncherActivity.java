@@ -2,9 +2,14 @@ package com.example.live.launcher;
 
 import android.content.ActivityNotFoundException;
 import android.content.Intent;
+import android.database.ContentObserver;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.View;
 import android.widget.TextView;
+import android.widget.Toast;
 import android.widget.NumberPicker;
 
 import androidx.annotation.NonNull;
@@ -37,7 +42,6 @@ import java.util.Set;
 public final class LauncherActivity extends AppCompatActivity {
 
     private static final int REQ_PERMS = 1201;
-    private static final long WEATHER_MIN_INTERVAL_MS = 30L * 60L * 1000L;
 
     private AppsAdapter adapter;
 
@@ -57,11 +61,61 @@ public final class LauncherActivity extends AppCompatActivity {
     private final Calendar visibleMonth = Calendar.getInstance();
 
     private static final String HOLIDAYS_COUNTRY_CODE = "IN";
+    private static final Uri CALENDAR_URI = Uri.parse("content://com.android.calendar");
+
+    private final PackageEvents.Listener catalogListener = new PackageEvents.Listener() {
+        @Override
+        public void onCatalogChanged() {
+            renderPinnedApps();
+        }
+    };
+
+    // Stores report changes; nothing is re-read from storage on resume.
+    private final RecordStore.Listener pinnedListener = new RecordStore.Listener() {
+        @Override
+        public void onRecordsChanged() {
+            renderPinnedApps();
+        }
+    };
+    private final RecordStore.Listener quickContactsListener = new RecordStore.Listener() {
+        @Override
+        public void onRecordsChanged() {
+            renderQuickContacts();
+        }
+    };
+    private final RecordStore.Listener weatherListener = new RecordStore.Listener() {
+        @Override
+        public void onRecordsChanged() {
+            WeatherClient.Reading reading = WeatherClient.getReading(LauncherActivity.this);
+            // Always re-rendered: a new location without a reading yet shows "--°C", not the old city.
+            if (weatherLine != null) weatherLine.setText(WeatherClient.formatLine(reading));
+        }
+    };
+    private final ContentObserver calendarObserver = new ContentObserver(new Handler(Looper.getMainLooper())) {
+        @Override
+        public void onChange(boolean selfChange) {
+            refreshCalendar();
+        }
+    };
+    // Day the calendar page was last rendered for; it is redrawn on resume only after midnight.
+    private int renderedDayKey;
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        // Everything below reads the secure store; if the warm-up has not opened it yet, continue
+        // once it has instead of blocking the main thread on the Keystore.
+        SecurePrefs.whenReady(this, new Runnable() {
+            @Override
+            public void run() {
+                if (isFinishing() || isDestroyed()) return;
+                onSecureStoreReady();
+            }
+        });
+    }
+
+    private void onSecureStoreReady() {
         if (!PasswordManager.isPasswordSet(this)) {
             startActivity(new Intent(this, SetupActivity.class));
             finish();
@@ -98,6 +152,17 @@ public final class LauncherActivity extends AppCompatActivity {
         // Calendar is index 0, Home is index 1, Others is index 2; start on Home.
         pager.setCurrentItem(LauncherPagerAdapter.PAGE_HOME, false);
 
+        // Registered for the activity's lifetime so a change while it is stopped is not missed.
+        PackageEvents.addListener(catalogListener);
+        PinnedAppsStore.addListener(pinnedListener);
+        QuickContactsStore.addListener(quickContactsListener);
+        WeatherClient.addListener(weatherListener);
+        try {
+            getContentResolver().registerContentObserver(CALENDAR_URI, true, calendarObserver);
+        } catch (Throwable ignored) {
+            // No calendar provider on this device.
+        }
+
         pager.registerOnPageChangeCallback(new ViewPager2.OnPageChangeCallback() {
             @Override
             public void onPageSelected(int position) {
@@ -111,10 +176,28 @@ public final class LauncherActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        renderPinnedApps();
+        // Only network staleness is checked here; the last reading is already in memory.
         refreshWeather();
-        renderQuickContacts();
-        refreshCalendar();
+        if (dayKey(Calendar.getInstance()) != renderedDayKey) refreshCalendar();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        PackageEvents.removeListener(catalogListener);
+        PinnedAppsStore.removeListener(pinnedListener);
+        QuickContactsStore.removeListener(quickContactsListener);
+        WeatherClient.removeListener(weatherListener);
+        getContentResolver().unregisterContentObserver(calendarObserver);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // A drag interrupted by the activity stopping still has its order saved.
+        if (quickContactsAdapter != null) quickContactsAdapter.flushPendingOrder();
+        LaunchHistoryStore.get(this).flush();
+        SecurePrefs.flush();
     }
 
     private void bindHomePage(View root) {
@@ -135,7 +218,7 @@ public final class LauncherActivity extends AppCompatActivity {
             labelPhone.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    launchEssential(LauncherEssential.PHONE);
+                    launchEssential(LaunchResolver.Essential.PHONE);
                 }
             });
         }
@@ -145,7 +228,7 @@ public final class LauncherActivity extends AppCompatActivity {
             labelMessages.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    launchEssential(LauncherEssential.MESSAGES);
+                    launchEssential(LaunchResolver.Essential.MESSAGES);
                 }
             });
         }
@@ -155,7 +238,7 @@ public final class LauncherActivity extends AppCompatActivity {
             labelGmail.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    launchEssential(LauncherEssential.GMAIL);
+                    launchEssential(LaunchResolver.Essential.GMAIL);
                 }
             });
         }
@@ -163,7 +246,10 @@ public final class LauncherActivity extends AppCompatActivity {
         // Quick contacts
         quickContactsList = root.findViewById(R.id.quick_contacts_list);
         quickContactsAdapter = new QuickContactsAdapter(this, contacts -> {
-            QuickContactsStore.updatePositions(LauncherActivity.this, contacts);
+            if (!QuickContactsStore.updatePositions(LauncherActivity.this, contacts)) {
+                Toast.makeText(LauncherActivity.this, R.string.records_read_only, Toast.LENGTH_LONG).show();
+                renderQuickContacts();
+            }
         });
         quickContactsList.setLayoutManager(new LinearLayoutManager(
                 this, LinearLayoutManager.HORIZONTAL, false));
@@ -202,8 +288,8 @@ public final class LauncherActivity extends AppCompatActivity {
         adapter = new AppsAdapter(new AppsAdapter.Listener() {
             @Override
             public void onAppClicked(AppInfo app) {
-                Intent launch = AppRepository.getLaunchIntent(LauncherActivity.this, app.packageName);
-                if (launch != null) startActivity(launch);
+                LaunchHistoryStore.get(LauncherActivity.this).recordLaunch(app.packageName);
+                launchApp(app);
             }
 
             @Override
@@ -276,10 +362,10 @@ public final class LauncherActivity extends AppCompatActivity {
     private void refreshWeather() {
         if (weatherLine == null) return;
 
-        WeatherClient.refreshIfStale(this, WEATHER_MIN_INTERVAL_MS, new WeatherClient.Callback() {
+        WeatherClient.refreshIfStale(this, WeatherClient.MAX_AGE_MS, new WeatherClient.Callback() {
             @Override
             public void onResult(WeatherClient.WeatherResult result) {
-                if (weatherLine != null) weatherLine.setText(result.displayLine);
+                if (weatherLine != null) weatherLine.setText(WeatherClient.formatLine(result.reading));
             }
         });
     }
@@ -373,64 +459,53 @@ public final class LauncherActivity extends AppCompatActivity {
                 }
                 numberLayout.setError(null);
                 
-                QuickContactsStore.addContact(LauncherActivity.this, name, num);
+                if (!QuickContactsStore.addContact(LauncherActivity.this, name, num)) {
+                    Toast.makeText(LauncherActivity.this, R.string.records_read_only, Toast.LENGTH_LONG).show();
+                }
                 renderQuickContacts();
                 dialog.dismiss();
             }
         });
     }
 
-    private enum LauncherEssential {
-        PHONE,
-        MESSAGES,
-        GMAIL
-    }
-
-    private void launchEssential(LauncherEssential essential) {
-        Intent intent = null;
+    private void launchEssential(LaunchResolver.Essential essential) {
+        Intent intent = LaunchResolver.essentialIntent(this, essential);
         try {
-            if (essential == LauncherEssential.PHONE) {
-                intent = new Intent(Intent.ACTION_DIAL);
-            } else if (essential == LauncherEssential.MESSAGES) {
-                intent = new Intent(Intent.ACTION_MAIN);
-                intent.addCategory(Intent.CATEGORY_APP_MESSAGING);
-            } else if (essential == LauncherEssential.GMAIL) {
-                intent = AppRepository.getLaunchIntent(this, "com.google.android.gm");
-                if (intent == null) {
-                    intent = new Intent(Intent.ACTION_MAIN);
-                    intent.addCategory(Intent.CATEGORY_APP_EMAIL);
-                }
-            }
-
             if (intent != null) startActivity(intent);
         } catch (ActivityNotFoundException anf) {
-            // Ignore: keep it distraction-free.
+            // Cached default handler went away; resolve again on the next tap.
+            if (intent.getComponent() != null) LaunchResolver.invalidate(intent.getComponent().getPackageName());
         } catch (Throwable t) {
-            // Ignore.
+            // Ignore: keep it distraction-free.
         }
     }
 
     private void renderPinnedApps() {
         // Home page may not yet be bound.
         if (adapter == null) return;
-        List<AppInfo> all = AppRepository.getLaunchableApps(this);
         Set<String> pinned = PinnedAppsStore.getPinned(this);
 
-        // Show only pinned packages that exist on this device.
-        List<AppInfo> filtered = new ArrayList<>();
-        for (AppInfo app : all) {
-            if (pinned.contains(app.packageName)) filtered.add(app);
+        // Show only pinned packages that exist on this device. Rows of the shared catalog when it is
+        // loaded; otherwise a lookup whose cost scales with the pinned count.
+        AppCatalog catalog = AppRepository.peekCatalog();
+        int[] rows;
+        if (catalog != null) {
+            rows = catalog.rowsForPackages(pinned);
+        } else {
+            catalog = PinnedAppsResolver.resolve(this, pinned);
+            rows = catalog.allRows();
         }
 
         // If user pinned set is default and empty due to OEM package differences, fall back to showing nothing rather than adding noise.
-        adapter.submit(filtered);
+        adapter.submit(catalog, rows);
 
         TextView empty = getWindow().getDecorView().findViewById(R.id.empty_hint);
-        if (empty != null) empty.setVisibility(filtered.isEmpty() ? View.VISIBLE : View.GONE);
+        if (empty != null) empty.setVisibility(rows.length == 0 ? View.VISIBLE : View.GONE);
     }
 
     private void refreshCalendar() {
         if (monthLabel == null || monthAdapter == null) return;
+        renderedDayKey = dayKey(Calendar.getInstance());
 
         Calendar month = (Calendar) visibleMonth.clone();
         month.set(Calendar.DAY_OF_MONTH, 1);
@@ -774,16 +849,16 @@ public final class LauncherActivity extends AppCompatActivity {
     }
 
     private void showPasswordDialog(final Runnable onSuccess) {
+        // A recent unlock is still valid: skip the dialog and PBKDF2.
+        if (UnlockSession.isActive()) {
+            if (onSuccess != null) onSuccess.run();
+            return;
+        }
+
         final View content = getLayoutInflater().inflate(R.layout.dialog_password, null);
         final TextInputLayout til = content.findViewById(R.id.password_layout);
         final TextInputEditText et = content.findViewById(R.id.password_input);
-
-        new AlertDialog.Builder(this)
-                .setTitle(R.string.unlock_title)
-                .setView(content)
-                .setNegativeButton(android.R.string.cancel, null)
-                .setPositiveButton(R.string.unlock, null)
-                .create();
+        final View progress = content.findViewById(R.id.password_progress);
 
         final AlertDialog dialog = new AlertDialog.Builder(this)
                 .setTitle(R.string.unlock_title)
@@ -792,17 +867,45 @@ public final class LauncherActivity extends AppCompatActivity {
                 .setPositiveButton(R.string.unlock, null)
                 .show();
 
-        dialog.getButton(AlertDialog.BUTTON_POSITIVE).setOnClickListener(new View.OnClickListener() {
+        final View unlock = dialog.getButton(AlertDialog.BUTTON_POSITIVE);
+        unlock.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
                 String pwd = et.getText() == null ? "" : et.getText().toString();
-                if (PasswordManager.verify(LauncherActivity.this, pwd)) {
-                    dialog.dismiss();
-                    if (onSuccess != null) onSuccess.run();
-                } else {
-                    til.setError(getString(R.string.wrong_password));
-                }
+                til.setError(null);
+                unlock.setEnabled(false);
+                et.setEnabled(false);
+                progress.setVisibility(View.VISIBLE);
+
+                PasswordManager.verifyAsync(LauncherActivity.this, pwd, new PasswordManager.VerifyCallback() {
+                    @Override
+                    public void onVerified(boolean ok) {
+                        // Cancelled or the activity went away while PBKDF2 was running.
+                        if (!dialog.isShowing() || isFinishing()) return;
+                        progress.setVisibility(View.GONE);
+                        if (ok) {
+                            UnlockSession.begin();
+                            dialog.dismiss();
+                            if (onSuccess != null) onSuccess.run();
+                        } else {
+                            unlock.setEnabled(true);
+                            et.setEnabled(true);
+                            til.setError(getString(R.string.wrong_password));
+                        }
+                    }
+                });
             }
         });
     }
+
+    private void launchApp(AppInfo app) {
+        try {
+            startActivity(LaunchResolver.launchIntentFor(app));
+        } catch (ActivityNotFoundException anf) {
+            // Stale component (e.g. app updated and renamed its activity): resolve afresh.
+            LaunchResolver.invalidate(app.packageName);
+            Intent launch = AppRepository.getLaunchIntent(this, app.packageName);
+            if (launch != null) startActivity(launch);
+        }
+    }
 }
@@ -0,0 +1,19 @@
+package com.example.live.launcher;
+
+import android.app.Application;
+
+/**
+ * Process entry point: starts expensive one-time work off the main thread
+ * before the first activity needs it.
+ */
+public final class LauncherApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        SecurePrefs.warmUpAsync(this);
+        HttpClient.installCacheAsync(this);
+        PackageEvents.register(this);
+        LaunchResolver.warmEssentials(this);
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.live.launcher;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.LauncherApps;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.UserHandle;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the in-memory catalog in step with installs, removals, updates and enable/disable toggles.
+ *
+ * Events arrive through {@link LauncherApps.Callback}, or package broadcasts if that cannot be
+ * registered, on a dedicated background thread. Each one patches the catalog for that package,
+ * drops its cached launch target and icons, and then tells registered screens on the main thread.
+ */
+final class PackageEvents {
+
+    /**
+     * Called on the main thread after a package changed, whether or not there was a catalog to
+     * patch; if there was none, {@link AppRepository#peekCatalog()} is still null.
+     */
+    interface Listener {
+        void onCatalogChanged();
+    }
+
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+    // Touched only on the main thread.
+    private static final List<Listener> listeners = new ArrayList<>();
+
+    private static Context appContext;
+    private static Handler worker;
+
+    private PackageEvents() {}
+
+    static synchronized void register(@NonNull Context context) {
+        if (worker != null) return;
+        appContext = context.getApplicationContext();
+        HandlerThread thread = new HandlerThread("package-events", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        worker = new Handler(thread.getLooper());
+
+        boolean tracking = registerLauncherAppsCallback() || registerBroadcastFallback();
+        // Without a change feed the catalog must keep rescanning to notice new apps.
+        AppRepository.setTrackingPackageEvents(tracking);
+    }
+
+    @MainThread
+    static void addListener(@NonNull Listener listener) {
+        if (!listeners.contains(listener)) listeners.add(listener);
+    }
+
+    @MainThread
+    static void removeListener(@NonNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private static boolean registerLauncherAppsCallback() {
+        try {
+            LauncherApps launcherApps = (LauncherApps) appContext.getSystemService(Context.LAUNCHER_APPS_SERVICE);
+            if (launcherApps == null) return false;
+            launcherApps.registerCallback(new LauncherApps.Callback() {
+                @Override
+                public void onPackageRemoved(String packageName, UserHandle user) {
+                    if (isSelf(user)) PackageEvents.onPackageChanged(packageName);
+                }
+
+                @Override
+                public void onPackageAdded(String packageName, UserHandle user) {
+                    if (isSelf(user)) PackageEvents.onPackageChanged(packageName);
+                }
+
+                @Override
+                public void onPackageChanged(String packageName, UserHandle user) {
+                    if (isSelf(user)) PackageEvents.onPackageChanged(packageName);
+                }
+
+                @Override
+                public void onPackagesAvailable(String[] packageNames, UserHandle user, boolean replacing) {
+                    if (isSelf(user)) onPackagesChanged(packageNames);
+                }
+
+                @Override
+                public void onPackagesUnavailable(String[] packageNames, UserHandle user, boolean replacing) {
+                    if (isSelf(user)) onPackagesChanged(packageNames);
+                }
+            }, worker);
+            return true;
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    private static boolean registerBroadcastFallback() {
+        try {
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+            filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+            filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+            filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+            filter.addDataScheme("package");
+            appContext.registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    Uri data = intent.getData();
+                    String packageName = data == null ? null : data.getSchemeSpecificPart();
+                    if (packageName != null) onPackageChanged(packageName);
+                }
+            }, filter, null, worker);
+            return true;
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    private static void onPackagesChanged(String[] packageNames) {
+        if (packageNames == null) return;
+        for (String packageName : packageNames) onPackageChanged(packageName);
+    }
+
+    /** Runs on the worker thread. */
+    private static void onPackageChanged(@NonNull String packageName) {
+        LaunchResolver.invalidate(packageName);
+        PinnedAppsResolver.invalidate(packageName);
+        IconCache.get(appContext).evict(packageName);
+        // Patches the catalog only if one has been built; screens that do not read the catalog
+        // (the pinned row goes through PinnedAppsResolver) still need to hear about the change.
+        AppRepository.applyPackageChange(appContext, packageName);
+
+        MAIN.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Listener l : new ArrayList<>(listeners)) l.onCatalogChanged();
+            }
+        });
+    }
+
+    private static boolean isSelf(UserHandle user) {
+        // The catalog only covers the current profile.
+        return user == null || Process.myUserHandle().equals(user);
+    }
+}
@@ -2,7 +2,14 @@ package com.example.live.launcher;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
 
 import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
@@ -10,16 +17,55 @@ import java.security.SecureRandom;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 
+/**
+ * Password hashing with PBKDF2-HMAC-SHA256.
+ *
+ * The iteration count is calibrated once per device (and OS version) so one derivation takes about
+ * {@link #TARGET_MS}, but never fewer than the {@link #DEFAULT_ITERATIONS} older hashes used. A
+ * hash stored with an iteration count far from the current calibration is replaced in the
+ * background after the next successful {@link #verifyAsync}, once the caller has its answer.
+ */
 public final class PasswordManager {
 
+    /** Delivered on the main thread. */
+    public interface VerifyCallback {
+        void onVerified(boolean ok);
+    }
+
+    /** Delivered on the main thread. */
+    public interface SetCallback {
+        void onPasswordSet(boolean ok);
+    }
+
     private static final String KEY_SALT = "pwd_salt";
     private static final String KEY_HASH = "pwd_hash";
     private static final String KEY_ITERS = "pwd_iters";
+    private static final String KEY_CALIBRATED_ITERS = "pwd_calibrated_iters";
+    private static final String KEY_CALIBRATED_SDK = "pwd_calibrated_sdk";
+
+    private static final String TAG = "PasswordManager";
 
+    // Hashes stored before calibration existed used this count.
     private static final int DEFAULT_ITERATIONS = 120_000;
+    private static final long TARGET_MS = 250L;
+    // Calibration never goes below the old default, so a slow device cannot weaken a stored hash.
+    private static final int MIN_ITERATIONS = DEFAULT_ITERATIONS;
+    private static final int MAX_ITERATIONS = 2_000_000;
+    private static final int BENCH_ITERATIONS = 20_000;
     private static final int SALT_BYTES = 16;
     private static final int HASH_BITS = 256;
 
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+    private static final Object CALIBRATION_LOCK = new Object();
+    // Serializes writes of the stored hash (new password vs. background rehash).
+    private static final Object HASH_LOCK = new Object();
+
+    // Diagnostics; -1 until measured in this process.
+    private static volatile int calibratedIterations = -1;
+    private static volatile long calibrationMs = -1L;
+    private static volatile long lastVerifyMs = -1L;
+    private static volatile long lastRehashMs = -1L;
+
     private PasswordManager() {}
 
     public static boolean isPasswordSet(Context context) {
@@ -31,35 +77,225 @@ public final class PasswordManager {
         byte[] salt = new byte[SALT_BYTES];
         new SecureRandom().nextBytes(salt);
 
-        int iters = DEFAULT_ITERATIONS;
+        int iters = calibratedIterations(context);
         byte[] hash = pbkdf2(password, salt, iters);
 
         SharedPreferences sp = SecurePrefs.get(context);
-        sp.edit()
-                .putString(KEY_SALT, b64(salt))
-                .putString(KEY_HASH, b64(hash))
-                .putInt(KEY_ITERS, iters)
-                .apply();
+        UnlockSession.end();
+        synchronized (HASH_LOCK) {
+            sp.edit()
+                    .putString(KEY_SALT, b64(salt))
+                    .putString(KEY_HASH, b64(hash))
+                    .putInt(KEY_ITERS, iters)
+                    .apply();
+        }
+    }
+
+    /**
+     * Runs {@link #setPassword} on a background thread, so neither calibration nor PBKDF2 runs on
+     * the caller's thread.
+     */
+    public static void setPasswordAsync(@NonNull Context context, @NonNull final String password,
+                                        @NonNull final SetCallback callback) {
+        final Context appContext = context.getApplicationContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                boolean ok;
+                try {
+                    setPassword(appContext, password);
+                    ok = true;
+                } catch (Throwable t) {
+                    ok = false;
+                }
+                final boolean result = ok;
+                MAIN.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onPasswordSet(result);
+                    }
+                });
+            }
+        }, "password-set").start();
+    }
+
+    // The stored hash a password matched, and its iteration count.
+    private static final class Verified {
+        final String hash;
+        final int iterations;
+
+        Verified(String hash, int iterations) {
+            this.hash = hash;
+            this.iterations = iterations;
+        }
     }
 
-    public static boolean verify(Context context, String password) {
+    /** The PBKDF2 check alone; null if the password does not match or none is set. */
+    private static Verified check(Context context, String password) {
         SharedPreferences sp = SecurePrefs.get(context);
         String saltB64 = sp.getString(KEY_SALT, null);
         String hashB64 = sp.getString(KEY_HASH, null);
         int iters = sp.getInt(KEY_ITERS, DEFAULT_ITERATIONS);
 
-        if (saltB64 == null || hashB64 == null) return false;
+        if (saltB64 == null || hashB64 == null) return null;
 
         try {
+            long start = SystemClock.elapsedRealtime();
             byte[] salt = Base64.decode(saltB64, Base64.NO_WRAP);
             byte[] expected = Base64.decode(hashB64, Base64.NO_WRAP);
             byte[] actual = pbkdf2(password, salt, iters);
-            return constantTimeEquals(expected, actual);
+            boolean ok = constantTimeEquals(expected, actual);
+            lastVerifyMs = SystemClock.elapsedRealtime() - start;
+            return ok ? new Verified(hashB64, iters) : null;
         } catch (Throwable t) {
-            return false;
+            return null;
+        }
+    }
+
+    /**
+     * Iteration count that takes about {@link #TARGET_MS} on this device. Benchmarks on first use
+     * (roughly 100 ms) and after an OS update; otherwise reads the stored result.
+     */
+    public static int calibratedIterations(Context context) {
+        int cached = calibratedIterations;
+        if (cached > 0) return cached;
+
+        synchronized (CALIBRATION_LOCK) {
+            if (calibratedIterations > 0) return calibratedIterations;
+            SharedPreferences sp = SecurePrefs.get(context);
+            int stored = sp.getInt(KEY_CALIBRATED_ITERS, -1);
+            if (stored > 0 && sp.getInt(KEY_CALIBRATED_SDK, -1) == Build.VERSION.SDK_INT) {
+                calibratedIterations = stored;
+                return stored;
+            }
+
+            int iters = benchmark();
+            sp.edit()
+                    .putInt(KEY_CALIBRATED_ITERS, iters)
+                    .putInt(KEY_CALIBRATED_SDK, Build.VERSION.SDK_INT)
+                    .apply();
+            calibratedIterations = iters;
+            return iters;
         }
     }
 
+    /** Calibrates on a background thread so a later {@link #setPassword} does not pay for it. */
+    public static void calibrateAsync(@NonNull Context context) {
+        if (calibratedIterations > 0) return;
+        final Context appContext = context.getApplicationContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                calibratedIterations(appContext);
+            }
+        }, "password-calibrate").start();
+    }
+
+    /** Iterations chosen by calibration in this process, or -1 if not calibrated yet. */
+    public static int getCalibratedIterations() {
+        return calibratedIterations;
+    }
+
+    /** Duration of the calibration benchmark in ms, or -1 if it has not run in this process. */
+    public static long getCalibrationDurationMs() {
+        return calibrationMs;
+    }
+
+    /** Duration of the last hash check in ms, or -1. */
+    public static long getLastVerifyDurationMs() {
+        return lastVerifyMs;
+    }
+
+    /** Duration of the last background rehash in ms, or -1. */
+    public static long getLastRehashDurationMs() {
+        return lastRehashMs;
+    }
+
+    /** Iteration count of the stored hash (the pre-calibration default for older hashes). */
+    public static int getStoredIterations(Context context) {
+        return SecurePrefs.get(context).getInt(KEY_ITERS, DEFAULT_ITERATIONS);
+    }
+
+    private static int benchmark() {
+        try {
+            byte[] salt = new byte[SALT_BYTES];
+            new SecureRandom().nextBytes(salt);
+            // Warm up the provider and JIT so the timed run is representative.
+            pbkdf2("calibration", salt, BENCH_ITERATIONS / 10);
+
+            long start = System.nanoTime();
+            pbkdf2("calibration", salt, BENCH_ITERATIONS);
+            long elapsedMs = Math.max(1L, (System.nanoTime() - start) / 1_000_000L);
+            calibrationMs = elapsedMs;
+
+            long scaled = BENCH_ITERATIONS * TARGET_MS / elapsedMs;
+            int iters = (int) Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, scaled));
+            iters = iters / 1000 * 1000;
+            Log.i(TAG, "PBKDF2 calibrated to " + iters + " iterations (" + BENCH_ITERATIONS
+                    + " took " + elapsedMs + " ms)");
+            return iters;
+        } catch (Throwable t) {
+            return DEFAULT_ITERATIONS;
+        }
+    }
+
+    /**
+     * After a successful check, replaces a hash whose iteration count is well off the calibrated
+     * one (too weak, or too slow for this device) with a fresh salt and hash. Runs on the calling
+     * thread, which must not be the main thread.
+     */
+    private static void rehashIfOutdated(Context appContext, String password, Verified verified) {
+        int target = calibratedIterations(appContext);
+        int storedIters = verified.iterations;
+        if (storedIters >= target * 3 / 4 && storedIters <= target * 3 / 2) return;
+
+        try {
+            long start = SystemClock.elapsedRealtime();
+            byte[] salt = new byte[SALT_BYTES];
+            new SecureRandom().nextBytes(salt);
+            byte[] hash = pbkdf2(password, salt, target);
+
+            SharedPreferences sp = SecurePrefs.get(appContext);
+            synchronized (HASH_LOCK) {
+                // The password changed meanwhile; keep the newer hash.
+                if (!verified.hash.equals(sp.getString(KEY_HASH, null))) return;
+                sp.edit()
+                        .putString(KEY_SALT, b64(salt))
+                        .putString(KEY_HASH, b64(hash))
+                        .putInt(KEY_ITERS, target)
+                        .apply();
+            }
+            lastRehashMs = SystemClock.elapsedRealtime() - start;
+            Log.i(TAG, "Password rehashed from " + storedIters + " to " + target + " iterations");
+        } catch (Throwable ignored) {
+        }
+    }
+
+    /**
+     * Runs the password check on a background thread (PBKDF2 takes hundreds of milliseconds). The
+     * result is posted before any calibration or rehash, which then continue on the same thread.
+     * Starting an {@link UnlockSession} is left to the caller, which knows whether it still wants
+     * the unlock.
+     */
+    public static void verifyAsync(@NonNull Context context, @NonNull final String password,
+                                   @NonNull final VerifyCallback callback) {
+        final Context appContext = context.getApplicationContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Verified v = check(appContext, password);
+                final boolean ok = v != null;
+                MAIN.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onVerified(ok);
+                    }
+                });
+                if (ok) rehashIfOutdated(appContext, password, v);
+            }
+        }, "password-verify").start();
+    }
+
     public static boolean meetsPolicy(String password) {
         if (password == null) return false;
         if (password.length() < 12) return false;
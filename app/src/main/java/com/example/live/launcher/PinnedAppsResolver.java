@@ -0,0 +1,97 @@
+package com.example.live.launcher;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.pm.PackageInfoCompat;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves only the pinned packages instead of scanning the whole catalog.
+ *
+ * Each package is queried once with a package-scoped launcher intent and the result (including
+ * "not installed") is cached until a package event or a locale change invalidates it. Only used
+ * until the shared {@link AppCatalog} has been loaded.
+ */
+final class PinnedAppsResolver {
+
+    private static final Object LOCK = new Object();
+    private static final Map<String, List<AppInfo>> byPackage = new HashMap<>();
+    private static String cacheLocale;
+
+    private PinnedAppsResolver() {}
+
+    /** A small catalog holding just the pinned apps, sorted by label. */
+    @NonNull
+    static AppCatalog resolve(@NonNull Context context, @NonNull Set<String> pinned) {
+        Locale locale = Locale.getDefault();
+        String localeTag = locale.toLanguageTag();
+        PackageManager pm = context.getApplicationContext().getPackageManager();
+
+        List<AppInfo> out = new ArrayList<>();
+        synchronized (LOCK) {
+            if (!localeTag.equals(cacheLocale)) {
+                byPackage.clear();
+                cacheLocale = localeTag;
+            }
+
+            for (String pkg : pinned) {
+                List<AppInfo> entries = byPackage.get(pkg);
+                if (entries == null) {
+                    entries = query(pm, pkg);
+                    byPackage.put(pkg, entries);
+                }
+                out.addAll(entries);
+            }
+        }
+
+        final Collator collator = AppRepository.labelCollator(locale);
+        Collections.sort(out, (a, b) -> collator.compare(a.label, b.label));
+        return AppCatalog.of(out);
+    }
+
+    static void invalidate(@NonNull String packageName) {
+        synchronized (LOCK) {
+            byPackage.remove(packageName);
+        }
+    }
+
+    @NonNull
+    private static List<AppInfo> query(@NonNull PackageManager pm, @NonNull String packageName) {
+        Intent intent = new Intent(Intent.ACTION_MAIN);
+        intent.addCategory(Intent.CATEGORY_LAUNCHER);
+        intent.setPackage(packageName);
+
+        List<ResolveInfo> resolveInfos;
+        PackageInfo pi;
+        try {
+            resolveInfos = pm.queryIntentActivities(intent, 0);
+            pi = resolveInfos.isEmpty() ? null : pm.getPackageInfo(packageName, 0);
+        } catch (Throwable t) {
+            // Not installed (or not visible): cache the miss as well.
+            return Collections.emptyList();
+        }
+
+        long versionCode = pi == null ? 0L : PackageInfoCompat.getLongVersionCode(pi);
+        long updated = pi == null ? 0L : pi.lastUpdateTime;
+        List<AppInfo> entries = new ArrayList<>(resolveInfos.size());
+        for (ResolveInfo ri : resolveInfos) {
+            CharSequence labelCs = ri.loadLabel(pm);
+            String label = labelCs == null ? packageName : labelCs.toString();
+            entries.add(new AppInfo(packageName, ri.activityInfo.name, label, versionCode, updated));
+        }
+        return entries;
+    }
+}
@@ -3,6 +3,11 @@ package com.example.live.launcher;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import androidx.annotation.NonNull;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -11,6 +16,9 @@ import java.util.Set;
 
 public final class PinnedAppsStore {
 
+    private static final int VERSION = 1;
+
+    // Legacy string-set key, read once by the migration.
     private static final String KEY_PINNED = "pinned_packages";
 
     // Reasonable defaults to reduce usage (may be missing on some devices).
@@ -22,21 +30,51 @@ public final class PinnedAppsStore {
             "com.android.messaging"       // SMS (AOSP/OEM)
     );
 
+    private static final RecordStore<String> STORE = new RecordStore<>("pinned_apps", VERSION,
+            new RecordStore.Codec<String>() {
+                @Override
+                public void write(@NonNull DataOutputStream out, @NonNull String packageName) throws IOException {
+                    out.writeUTF(packageName);
+                }
+
+                @NonNull
+                @Override
+                public String read(@NonNull DataInputStream in, int version) throws IOException {
+                    return in.readUTF();
+                }
+            },
+            new RecordStore.Migration<String>() {
+                @Override
+                public List<String> migrate(@NonNull SharedPreferences sp, @NonNull SharedPreferences.Editor ed) {
+                    Set<String> set = sp.getStringSet(KEY_PINNED, null);
+                    if (set == null) return null;
+                    ed.remove(KEY_PINNED);
+                    return new ArrayList<>(set);
+                }
+            });
+
     private PinnedAppsStore() {}
 
+    /** Notified on the main thread when the stored value changes. */
+    static void addListener(RecordStore.Listener listener) {
+        STORE.addListener(listener);
+    }
+
+    static void removeListener(RecordStore.Listener listener) {
+        STORE.removeListener(listener);
+    }
+
     public static Set<String> getPinned(Context context) {
-        SharedPreferences sp = SecurePrefs.get(context);
-        Set<String> set = sp.getStringSet(KEY_PINNED, null);
-        if (set == null) {
+        if (!STORE.isStored(context)) {
             // First run: keep only the essentials, but allow device variance.
             return new HashSet<>(DEFAULT_PACKAGES);
         }
-        return new HashSet<>(set);
+        return new HashSet<>(STORE.list(context));
     }
 
-    public static void setPinned(Context context, Set<String> packages) {
-        SharedPreferences sp = SecurePrefs.get(context);
-        sp.edit().putStringSet(KEY_PINNED, new HashSet<>(packages)).apply();
+    /** Returns false if the list could not be saved (stored by a newer version of the app). */
+    public static boolean setPinned(Context context, Set<String> packages) {
+        return STORE.replaceAll(context, new ArrayList<>(packages));
     }
 
     public static List<String> getPinnedList(Context context) {
@@ -32,6 +32,8 @@ public class QuickContactsAdapter extends RecyclerView.Adapter<QuickContactsAdap
     private final ItemTouchHelper touchHelper;
     private String selectedContactId = null;
     private boolean inEditMode = false;
+    // Set by drag moves; the new order is reported once, when the drag ends or on flush.
+    private boolean orderDirty = false;
 
     public interface Listener {
         void onContactsChanged(List<QuickContact> contacts);
@@ -59,10 +61,18 @@ public class QuickContactsAdapter extends RecyclerView.Adapter<QuickContactsAdap
                 int to = target.getAdapterPosition();
                 Collections.swap(contacts, from, to);
                 notifyItemMoved(from, to);
-                if (listener != null) listener.onContactsChanged(new ArrayList<>(contacts));
+                orderDirty = true;
                 return true;
             }
 
+            @Override
+            public void clearView(@NonNull RecyclerView recyclerView,
+                                  @NonNull RecyclerView.ViewHolder viewHolder) {
+                super.clearView(recyclerView, viewHolder);
+                // Drag finished (dropped or cancelled).
+                flushPendingOrder();
+            }
+
             @Override
             public void onSwiped(@NonNull RecyclerView.ViewHolder viewHolder, int direction) {
                 // Swipe not supported; use long-press menu instead
@@ -76,6 +86,13 @@ public class QuickContactsAdapter extends RecyclerView.Adapter<QuickContactsAdap
         touchHelper.attachToRecyclerView(recyclerView);
     }
 
+    /** Reports a reorder that has not been delivered yet; call from onPause as well. */
+    public void flushPendingOrder() {
+        if (!orderDirty) return;
+        orderDirty = false;
+        if (listener != null) listener.onContactsChanged(new ArrayList<>(contacts));
+    }
+
     public void submitList(List<QuickContact> newContacts) {
         contacts.clear();
         contacts.addAll(newContacts);
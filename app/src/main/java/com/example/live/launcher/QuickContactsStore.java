@@ -3,114 +3,103 @@ package com.example.live.launcher;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import androidx.annotation.NonNull;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
+/**
+ * Quick contacts, stored as one record list in display order. A contact's position is its index.
+ */
 public final class QuickContactsStore {
 
+    private static final int VERSION = 1;
+
+    // Legacy per-field keys, read once by the migration.
     private static final String PREFIX_NAME = "qc_name_";
     private static final String PREFIX_NUMBER = "qc_number_";
     private static final String PREFIX_POSITION = "qc_pos_";
     private static final String KEY_IDS = "qc_ids";
 
-    private QuickContactsStore() {}
+    private static final RecordStore<QuickContact> STORE = new RecordStore<>("quick_contacts", VERSION,
+            new RecordStore.Codec<QuickContact>() {
+                @Override
+                public void write(@NonNull DataOutputStream out, @NonNull QuickContact c) throws IOException {
+                    out.writeUTF(c.id);
+                    out.writeUTF(c.name);
+                    out.writeUTF(c.number);
+                }
 
-    public static List<QuickContact> getContacts(Context context) {
-        SharedPreferences sp = SecurePrefs.get(context);
-        String idsStr = sp.getString(KEY_IDS, "");
-        
-        List<QuickContact> contacts = new ArrayList<>();
-        if (idsStr.isEmpty()) {
-            return contacts;
-        }
+                @NonNull
+                @Override
+                public QuickContact read(@NonNull DataInputStream in, int version) throws IOException {
+                    return new QuickContact(in.readUTF(), in.readUTF(), in.readUTF(), 0);
+                }
+            },
+            new RecordStore.Migration<QuickContact>() {
+                @Override
+                public List<QuickContact> migrate(@NonNull SharedPreferences sp, @NonNull SharedPreferences.Editor ed) {
+                    String idsStr = sp.getString(KEY_IDS, null);
+                    if (idsStr == null) return null;
 
-        String[] ids = idsStr.split(",");
-        for (String id : ids) {
-            id = id.trim();
-            if (id.isEmpty()) continue;
-            
-            String name = sp.getString(PREFIX_NAME + id, "");
-            String number = sp.getString(PREFIX_NUMBER + id, "");
-            int position = sp.getInt(PREFIX_POSITION + id, 0);
-            
-            if (!name.isEmpty() && !number.isEmpty()) {
-                contacts.add(new QuickContact(id, name, number, position));
-            }
-        }
+                    List<QuickContact> contacts = new ArrayList<>();
+                    for (String id : idsStr.split(",")) {
+                        id = id.trim();
+                        if (id.isEmpty()) continue;
+                        String name = sp.getString(PREFIX_NAME + id, "");
+                        String number = sp.getString(PREFIX_NUMBER + id, "");
+                        int position = sp.getInt(PREFIX_POSITION + id, 0);
+                        if (!name.isEmpty() && !number.isEmpty()) {
+                            contacts.add(new QuickContact(id, name, number, position));
+                        }
+                        ed.remove(PREFIX_NAME + id).remove(PREFIX_NUMBER + id).remove(PREFIX_POSITION + id);
+                    }
+                    ed.remove(KEY_IDS);
+                    contacts.sort((a, b) -> Integer.compare(a.position, b.position));
+                    return contacts;
+                }
+            });
 
-        // Sort by position
-        contacts.sort((a, b) -> Integer.compare(a.position, b.position));
-        return contacts;
-    }
+    private QuickContactsStore() {}
 
-    public static void addContact(Context context, String name, String number) {
-        String id = UUID.randomUUID().toString();
-        SharedPreferences sp = SecurePrefs.get(context);
-        
-        List<QuickContact> existing = getContacts(context);
-        int nextPosition = existing.size();
-        
-        sp.edit()
-                .putString(PREFIX_NAME + id, name)
-                .putString(PREFIX_NUMBER + id, number)
-                .putInt(PREFIX_POSITION + id, nextPosition)
-                .putString(KEY_IDS, appendId(sp.getString(KEY_IDS, ""), id))
-                .apply();
+    /** Notified on the main thread when the stored value changes. */
+    static void addListener(RecordStore.Listener listener) {
+        STORE.addListener(listener);
     }
 
-    public static void removeContact(Context context, String id) {
-        SharedPreferences sp = SecurePrefs.get(context);
-        sp.edit()
-                .remove(PREFIX_NAME + id)
-                .remove(PREFIX_NUMBER + id)
-                .remove(PREFIX_POSITION + id)
-                .putString(KEY_IDS, removeId(sp.getString(KEY_IDS, ""), id))
-                .apply();
+    static void removeListener(RecordStore.Listener listener) {
+        STORE.removeListener(listener);
     }
 
-    public static void updatePositions(Context context, List<QuickContact> contacts) {
-        SharedPreferences.Editor ed = SecurePrefs.get(context).edit();
-        for (int i = 0; i < contacts.size(); i++) {
-            QuickContact c = contacts.get(i);
-            ed.putInt(PREFIX_POSITION + c.id, i);
+    public static List<QuickContact> getContacts(Context context) {
+        List<QuickContact> stored = STORE.list(context);
+        List<QuickContact> contacts = new ArrayList<>(stored.size());
+        for (int i = 0; i < stored.size(); i++) {
+            QuickContact c = stored.get(i);
+            contacts.add(new QuickContact(c.id, c.name, c.number, i));
         }
-        ed.apply();
+        return contacts;
     }
 
-    public static void clear(Context context) {
-        SharedPreferences sp = SecurePrefs.get(context);
-        String idsStr = sp.getString(KEY_IDS, "");
-        if (!idsStr.isEmpty()) {
-            SharedPreferences.Editor ed = sp.edit();
-            String[] ids = idsStr.split(",");
-            for (String id : ids) {
-                id = id.trim();
-                if (!id.isEmpty()) {
-                    ed.remove(PREFIX_NAME + id)
-                      .remove(PREFIX_NUMBER + id)
-                      .remove(PREFIX_POSITION + id);
-                }
-            }
-            ed.putString(KEY_IDS, "").apply();
-        }
+    /** Returns false if the contacts could not be saved (stored by a newer version of the app). */
+    public static boolean addContact(Context context, String name, String number) {
+        return STORE.add(context, new QuickContact(UUID.randomUUID().toString(), name, number, 0));
     }
 
-    private static String appendId(String idsStr, String id) {
-        if (idsStr.isEmpty()) return id;
-        return idsStr + "," + id;
+    public static boolean removeContact(Context context, String id) {
+        return STORE.removeFirst(context, c -> c.id.equals(id));
     }
 
-    private static String removeId(String idsStr, String id) {
-        String[] ids = idsStr.split(",");
-        StringBuilder sb = new StringBuilder();
-        for (String existingId : ids) {
-            existingId = existingId.trim();
-            if (!existingId.isEmpty() && !existingId.equals(id)) {
-                if (sb.length() > 0) sb.append(",");
-                sb.append(existingId);
-            }
-        }
-        return sb.toString();
+    /** Stores the given order; the list holds every contact. */
+    public static boolean updatePositions(Context context, List<QuickContact> contacts) {
+        return STORE.replaceAll(context, contacts);
+    }
+
+    public static boolean clear(Context context) {
+        return STORE.replaceAll(context, new ArrayList<QuickContact>());
     }
 }
@@ -0,0 +1,228 @@
+package com.example.live.launcher;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+/**
+ * One collection of records kept as a single versioned binary blob in {@link SecurePrefs}.
+ *
+ * The blob is decoded once, on first access, and the list then lives in memory; every change
+ * re-encodes the whole (small) collection and stores it as one journal append. Old per-field
+ * keys are converted on first access through a {@link Migration}.
+ *
+ * A change that leaves the encoded blob identical is neither written nor reported; any other
+ * change is reported to {@link Listener}s on the main thread. A blob written by a newer version
+ * is left alone: the store reads as empty and every change returns false until that version is
+ * back. A blob that cannot be decoded is copied under a backup key before anything replaces it.
+ */
+final class RecordStore<T> {
+
+    interface Codec<T> {
+        void write(@NonNull DataOutputStream out, @NonNull T record) throws IOException;
+
+        /** Reads one record written by {@link #write} at the given blob version. */
+        @NonNull
+        T read(@NonNull DataInputStream in, int version) throws IOException;
+    }
+
+    /** Called on the main thread after the records changed. */
+    interface Listener {
+        void onRecordsChanged();
+    }
+
+    interface Migration<T> {
+        /**
+         * Returns the records held under the old keys and removes those keys through {@code ed},
+         * or null if there is nothing to migrate.
+         */
+        @Nullable
+        List<T> migrate(@NonNull SharedPreferences sp, @NonNull SharedPreferences.Editor ed);
+    }
+
+    private static final String TAG = "RecordStore";
+    private static final String KEY_PREFIX = "rec_";
+    private static final String CORRUPT_SUFFIX = "_corrupt";
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    private final String key;
+    private final int version;
+    private final Codec<T> codec;
+    @Nullable private final Migration<T> migration;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Null until first access.
+    private List<T> records;
+    // False while nothing has ever been written (lets callers fall back to defaults).
+    private boolean stored;
+    // The blob last read or written, to skip no-op writes.
+    @Nullable private String encoded;
+    // Set when the blob is from a newer version; it must not be replaced with what this one knows.
+    private boolean readOnly;
+
+    RecordStore(@NonNull String name, int version, @NonNull Codec<T> codec, @Nullable Migration<T> migration) {
+        this.key = KEY_PREFIX + name;
+        this.version = version;
+        this.codec = codec;
+        this.migration = migration;
+    }
+
+    void addListener(@NonNull Listener listener) {
+        if (!listeners.contains(listener)) listeners.add(listener);
+    }
+
+    void removeListener(@NonNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** A copy of the records, in order. */
+    @NonNull
+    synchronized List<T> list(@NonNull Context context) {
+        return new ArrayList<>(records(context));
+    }
+
+    synchronized boolean isStored(@NonNull Context context) {
+        records(context);
+        return stored;
+    }
+
+    /** Returns false if the store is read-only (see the class comment). */
+    synchronized boolean add(@NonNull Context context, @NonNull T record) {
+        List<T> list = records(context);
+        if (readOnly) return false;
+        list.add(record);
+        persist(context);
+        return true;
+    }
+
+    /** Removes the first record that matches; returns false if none did or the store is read-only. */
+    synchronized boolean removeFirst(@NonNull Context context, @NonNull Predicate<T> match) {
+        List<T> list = records(context);
+        if (readOnly) return false;
+        for (int i = 0; i < list.size(); i++) {
+            if (match.test(list.get(i))) {
+                list.remove(i);
+                persist(context);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns false if the store is read-only. */
+    synchronized boolean move(@NonNull Context context, int from, int to) {
+        List<T> list = records(context);
+        if (readOnly) return false;
+        list.add(to, list.remove(from));
+        persist(context);
+        return true;
+    }
+
+    /** Returns false if the store is read-only. */
+    synchronized boolean replaceAll(@NonNull Context context, @NonNull List<T> next) {
+        List<T> list = records(context);
+        if (readOnly) return false;
+        list.clear();
+        list.addAll(next);
+        persist(context);
+        return true;
+    }
+
+    @NonNull
+    private List<T> records(@NonNull Context context) {
+        if (records != null) return records;
+
+        SharedPreferences sp = SecurePrefs.get(context);
+        String blob = sp.getString(key, null);
+        if (blob != null) {
+            records = decode(sp, blob);
+            stored = true;
+            encoded = blob;
+            return records;
+        }
+
+        records = new ArrayList<>();
+        if (migration != null) {
+            SharedPreferences.Editor ed = sp.edit();
+            List<T> migrated = migration.migrate(sp, ed);
+            if (migrated != null) {
+                records.addAll(migrated);
+                // The new blob and the removal of the old keys land in one commit.
+                encoded = encode(records);
+                ed.putString(key, encoded);
+                stored = true;
+            }
+            ed.apply();
+        }
+        return records;
+    }
+
+    private void persist(@NonNull Context context) {
+        String blob = encode(records);
+        if (stored && blob.equals(encoded)) return;
+        stored = true;
+        encoded = blob;
+        SecurePrefs.get(context).edit().putString(key, blob).apply();
+
+        MAIN.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Listener l : listeners) l.onRecordsChanged();
+            }
+        });
+    }
+
+    @NonNull
+    private String encode(@NonNull List<T> list) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + list.size() * 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(version);
+            out.writeInt(list.size());
+            for (T record : list) codec.write(out, record);
+            out.flush();
+            return Base64.encodeToString(bytes.toByteArray(), Base64.NO_WRAP);
+        } catch (IOException e) {
+            // In-memory streams do not throw.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NonNull
+    private List<T> decode(@NonNull SharedPreferences sp, @NonNull String blob) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.decode(blob, Base64.NO_WRAP)));
+            int blobVersion = in.readInt();
+            if (blobVersion > version) {
+                // Written by a newer build; do not guess, and do not save over it.
+                readOnly = true;
+                return new ArrayList<>();
+            }
+            int count = in.readInt();
+            List<T> out = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) out.add(codec.read(in, blobVersion));
+            return out;
+        } catch (Throwable t) {
+            // Keep the unreadable blob around; the next change would otherwise overwrite it.
+            Log.w(TAG, "Could not decode " + key + "; copied to " + key + CORRUPT_SUFFIX, t);
+            sp.edit().putString(key + CORRUPT_SUFFIX, blob).apply();
+            return new ArrayList<>();
+        }
+    }
+}
@@ -2,30 +2,105 @@ package com.example.live.launcher;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
 
 import androidx.security.crypto.EncryptedSharedPreferences;
 import androidx.security.crypto.MasterKey;
 
+/**
+ * Process-wide handle to the encrypted preferences file.
+ *
+ * Opening the store costs a Keystore round trip plus a Tink keyset load, so it is done once per
+ * process (ideally on a background thread via {@link #warmUpAsync(Context)}) and shared afterwards.
+ *
+ * Writes go through a {@link JournaledPrefs} journal and reach the encrypted file in batches;
+ * activities call {@link #flush()} from onPause.
+ */
 public final class SecurePrefs {
 
+    private static final String TAG = "SecurePrefs";
     private static final String PREFS_NAME = "launcher_secure_prefs";
 
+    private static volatile SharedPreferences INSTANCE;
+    private static volatile long firstOpenMs = -1L;
+
     private SecurePrefs() {}
 
     public static SharedPreferences get(Context context) {
-        Context appContext = context.getApplicationContext();
+        SharedPreferences cached = INSTANCE;
+        if (cached != null) return cached;
+
+        // Callers racing the warm-up thread block here until the single open finishes.
+        synchronized (SecurePrefs.class) {
+            if (INSTANCE != null) return INSTANCE;
+            long start = SystemClock.elapsedRealtime();
+            SharedPreferences opened = open(context.getApplicationContext());
+            firstOpenMs = SystemClock.elapsedRealtime() - start;
+            Log.i(TAG, "Secure store opened in " + firstOpenMs + " ms on " + Thread.currentThread().getName());
+            INSTANCE = opened;
+            return opened;
+        }
+    }
+
+    /** Opens the store on a background thread so the first UI caller finds it ready. */
+    public static void warmUpAsync(Context context) {
+        if (INSTANCE != null) return;
+        final Context appContext = context.getApplicationContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                get(appContext);
+            }
+        }, "secure-prefs-warmup").start();
+    }
+
+    /**
+     * Runs {@code then} on the main thread once the store is open: right away if it already is,
+     * otherwise after the open (or the warm-up already running) finishes on a background thread.
+     */
+    public static void whenReady(Context context, final Runnable then) {
+        if (INSTANCE != null) {
+            then.run();
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                get(appContext);
+                new Handler(Looper.getMainLooper()).post(then);
+            }
+        }, "secure-prefs-ready").start();
+    }
+
+    /** Folds journaled writes into the encrypted file in the background; a no-op before first open. */
+    public static void flush() {
+        SharedPreferences prefs = INSTANCE;
+        if (prefs instanceof JournaledPrefs) ((JournaledPrefs) prefs).flush();
+    }
+
+    /** Duration of the one-time open in milliseconds, or -1 if the store has not been opened yet. */
+    public static long getFirstOpenDurationMs() {
+        return firstOpenMs;
+    }
+
+    private static SharedPreferences open(Context appContext) {
         try {
             MasterKey key = new MasterKey.Builder(appContext)
                     .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
                     .build();
 
-            return EncryptedSharedPreferences.create(
+            SharedPreferences encrypted = EncryptedSharedPreferences.create(
                     appContext,
                     PREFS_NAME,
                     key,
                     EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
                     EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM
             );
+            return JournaledPrefs.open(appContext, encrypted);
         } catch (Throwable t) {
             // Fallback (rare): some devices/emulators can fail keystore. Still keep the app usable.
             return appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
@@ -32,13 +32,22 @@ import java.io.IOException;
 import java.util.Map;
 
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 public final class SetupActivity extends AppCompatActivity {
 
     private AppsAdapter adapter;
 
+    private final PackageEvents.Listener catalogListener = new PackageEvents.Listener() {
+        @Override
+        public void onCatalogChanged() {
+            // Checked packages are kept by the adapter across submits. Without a catalog yet the
+            // running load delivers one; no scan on the main thread here.
+            AppCatalog catalog = AppRepository.peekCatalog();
+            if (catalog != null) adapter.submit(catalog, catalog.allRows());
+        }
+    };
+
     private final ActivityResultLauncher<Intent> pickImageLauncher = registerForActivityResult(
             new ActivityResultContracts.StartActivityForResult(),
             new ActivityResultCallback<ActivityResult>() {
@@ -86,11 +95,19 @@ public final class SetupActivity extends AppCompatActivity {
         adapter = new AppsAdapter(null, true);
         rv.setAdapter(adapter);
 
-        List<AppInfo> apps = AppRepository.getLaunchableApps(this);
-        adapter.submit(apps);
+        // First run has no label snapshot yet; rows fill in as the parallel load progresses.
         adapter.setCheckedPackages(PinnedAppsStore.getPinned(this));
+        AppRepository.loadAsync(this, new AppRepository.LoadCallback() {
+            @Override
+            public void onCatalogLoaded(AppCatalog catalog, boolean complete) {
+                if (isDestroyed()) return;
+                adapter.submit(catalog, catalog.allRows());
+            }
+        });
+        PackageEvents.addListener(catalogListener);
 
-        findViewById(R.id.setup_save).setOnClickListener(new View.OnClickListener() {
+        final View save = findViewById(R.id.setup_save);
+        save.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
                 error.setText("");
@@ -98,32 +115,34 @@ public final class SetupActivity extends AppCompatActivity {
                 String p1 = pwd.getText() == null ? "" : pwd.getText().toString();
                 String p2 = pwd2.getText() == null ? "" : pwd2.getText().toString();
 
-                if (!PasswordManager.isPasswordSet(SetupActivity.this)) {
-                    if (!PasswordManager.meetsPolicy(p1)) {
-                        error.setText(getString(R.string.password_policy));
-                        return;
-                    }
-                    if (!p1.equals(p2)) {
-                        error.setText(getString(R.string.password_mismatch));
-                        return;
-                    }
-                    try {
-                        PasswordManager.setPassword(SetupActivity.this, p1);
-                    } catch (Exception e) {
-                        error.setText(getString(R.string.password_set_failed));
-                        return;
-                    }
+                if (PasswordManager.isPasswordSet(SetupActivity.this)) {
+                    savePinned(error);
+                    return;
                 }
-
-                Set<String> pinned = adapter.getCheckedPackages();
-                if (pinned.isEmpty()) {
-                    error.setText(getString(R.string.pinned_empty));
+                if (!PasswordManager.meetsPolicy(p1)) {
+                    error.setText(getString(R.string.password_policy));
+                    return;
+                }
+                if (!p1.equals(p2)) {
+                    error.setText(getString(R.string.password_mismatch));
                     return;
                 }
-                PinnedAppsStore.setPinned(SetupActivity.this, pinned);
 
-                startActivity(new Intent(SetupActivity.this, LauncherActivity.class));
-                finish();
+                // PBKDF2 runs off the UI thread; no second save while it does.
+                save.setEnabled(false);
+                PasswordManager.setPasswordAsync(SetupActivity.this, p1, new PasswordManager.SetCallback() {
+                    @Override
+                    public void onPasswordSet(boolean ok) {
+                        if (isDestroyed()) return;
+                        save.setEnabled(true);
+                        if (!ok) {
+                            error.setText(getString(R.string.password_set_failed));
+                            return;
+                        }
+                        renderPasswordSection();
+                        savePinned(error);
+                    }
+                });
             }
         });
 
@@ -177,10 +196,41 @@ public final class SetupActivity extends AppCompatActivity {
         renderPasswordSection();
         renderImageState();
 
+        // Benchmark PBKDF2 now so saving a new password only pays for the hash itself.
+        if (!PasswordManager.isPasswordSet(this)) PasswordManager.calibrateAsync(this);
+
         // Keep dashboard data reasonably fresh.
         DashboardDataRefresher.refreshInBackground(this);
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        SecurePrefs.flush();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        PackageEvents.removeListener(catalogListener);
+    }
+
+    /** Second half of a save, once a password is set: store the pinned apps and open the launcher. */
+    private void savePinned(TextView error) {
+        Set<String> pinned = adapter.getCheckedPackages();
+        if (pinned.isEmpty()) {
+            error.setText(getString(R.string.pinned_empty));
+            return;
+        }
+        if (!PinnedAppsStore.setPinned(this, pinned)) {
+            error.setText(getString(R.string.records_read_only));
+            return;
+        }
+
+        startActivity(new Intent(this, LauncherActivity.class));
+        finish();
+    }
+
     private void renderPasswordSection() {
         View section = findViewById(R.id.password_section);
         TextView hint = findViewById(R.id.password_section_hint);
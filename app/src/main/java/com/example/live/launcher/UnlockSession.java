@@ -0,0 +1,43 @@
+package com.example.live.launcher;
+
+import android.os.SystemClock;
+
+/**
+ * In-memory record of a recent successful unlock, so reopening All Apps or Setup shortly after does
+ * not run PBKDF2 again.
+ *
+ * A session is just its expiry time: it lives only in this process and ends {@link #TIMEOUT_MS}
+ * after the unlock (it is not extended by use); it is never persisted.
+ */
+public final class UnlockSession {
+
+    private static final long TIMEOUT_MS = 2 * 60 * 1000L;
+
+    private static final Object LOCK = new Object();
+    // 0 while no session is active.
+    private static long expiresAtElapsed;
+
+    private UnlockSession() {}
+
+    /** Starts a new session, replacing any current one, once the unlock UI accepts a password. */
+    static void begin() {
+        synchronized (LOCK) {
+            expiresAtElapsed = SystemClock.elapsedRealtime() + TIMEOUT_MS;
+        }
+    }
+
+    public static boolean isActive() {
+        synchronized (LOCK) {
+            if (expiresAtElapsed == 0L) return false;
+            if (SystemClock.elapsedRealtime() < expiresAtElapsed) return true;
+            end();
+            return false;
+        }
+    }
+
+    public static void end() {
+        synchronized (LOCK) {
+            expiresAtElapsed = 0L;
+        }
+    }
+}
@@ -1,22 +1,28 @@
 package com.example.live.launcher;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.Looper;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import org.json.JSONObject;
 import org.json.JSONArray;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public final class WeatherClient {
 
@@ -26,14 +32,60 @@ public final class WeatherClient {
 
     public static final class WeatherResult {
         public final boolean ok;
-        public final String displayLine;
+        /** The stored reading on success; on failure, the saved location without a temperature. */
+        @NonNull public final Reading reading;
 
-        WeatherResult(boolean ok, @NonNull String displayLine) {
+        WeatherResult(boolean ok, @NonNull Reading reading) {
             this.ok = ok;
-            this.displayLine = displayLine;
+            this.reading = reading;
         }
     }
 
+    /**
+     * Saved location and the last temperature fetched for it; the single source for every surface
+     * that shows the weather. Text is produced at display time by {@link #formatLine} and
+     * {@link #formatTemperature}.
+     */
+    public static final class Reading {
+        @Nullable public final SavedLocation location;
+        /** Degrees Celsius, or NaN if there is no reading for this location. */
+        public final double tempC;
+        public final long fetchedAt;
+
+        Reading(@Nullable SavedLocation location, double tempC, long fetchedAt) {
+            this.location = location;
+            this.tempC = tempC;
+            this.fetchedAt = fetchedAt;
+        }
+
+        public boolean hasTemperature() {
+            return !Double.isNaN(tempC);
+        }
+    }
+
+    /**
+     * How old a reading may get before callers refresh it. A refresh is normally answered from the
+     * cached hourly forecast without touching the network.
+     */
+    public static final long MAX_AGE_MS = 15L * 60L * 1000L;
+
+    // One request covers today and tomorrow (UTC), so about one fetch a day per cell.
+    private static final int FORECAST_DAYS = 2;
+    // Refetch once the cached forecast ends sooner than this.
+    private static final long MIN_HORIZON_MS = 12L * 60L * 60L * 1000L;
+    // Recently used grid cells kept, newest first.
+    private static final int MAX_FORECAST_CELLS = 4;
+
+    // 2: temperature stored as a number instead of a preformatted line.
+    private static final int VERSION = 2;
+
+    private static final String FORECAST_BASE = "https://api.open-meteo.com";
+    private static final String GEOCODING_BASE = "https://geocoding-api.open-meteo.com";
+
+    private static volatile String forecastBase = FORECAST_BASE;
+    private static volatile String geocodingBase = GEOCODING_BASE;
+
+    // Legacy keys, read once by the migration.
     private static final String KEY_LAST_WEATHER_LINE = "last_weather_line";
     private static final String KEY_LAST_WEATHER_TS = "last_weather_ts";
 
@@ -41,6 +93,89 @@ public final class WeatherClient {
     private static final String KEY_SAVED_LON_BITS = "saved_weather_lon_bits";
     private static final String KEY_SAVED_LABEL = "saved_weather_label";
 
+    private static final Reading EMPTY = new Reading(null, Double.NaN, 0L);
+    // Matches the temperature at the end of a version 1 line, e.g. "Oslo • -3°C".
+    private static final Pattern V1_TEMP = Pattern.compile("(-?\\d+)°C\\s*$");
+
+    private static final RecordStore<HourlyForecast> FORECASTS = new RecordStore<>("forecast", 1,
+            new RecordStore.Codec<HourlyForecast>() {
+                @Override
+                public void write(@NonNull DataOutputStream out, @NonNull HourlyForecast f) throws IOException {
+                    f.write(out);
+                }
+
+                @NonNull
+                @Override
+                public HourlyForecast read(@NonNull DataInputStream in, int version) throws IOException {
+                    return HourlyForecast.read(in);
+                }
+            }, null);
+
+    /** One in-flight fetch and everyone waiting for it. */
+    private static final class Pending {
+        @Nullable final SavedLocation location;
+        final List<Callback> callbacks = new ArrayList<>(2);
+
+        Pending(@Nullable SavedLocation location) {
+            this.location = location;
+        }
+    }
+
+    private static final Object PENDING_LOCK = new Object();
+    // Guarded by PENDING_LOCK.
+    @Nullable private static Pending pending;
+    // The grid cell whose last fetch failed, and when; in memory only. Guarded by PENDING_LOCK.
+    private static long failedCell = Long.MIN_VALUE;
+    private static long failedAt;
+
+    private static final RecordStore<Reading> STORE = new RecordStore<>("weather", VERSION,
+            new RecordStore.Codec<Reading>() {
+                @Override
+                public void write(@NonNull DataOutputStream out, @NonNull Reading s) throws IOException {
+                    out.writeBoolean(s.location != null);
+                    if (s.location != null) {
+                        out.writeDouble(s.location.lat);
+                        out.writeDouble(s.location.lon);
+                        out.writeUTF(s.location.label == null ? "" : s.location.label);
+                    }
+                    out.writeDouble(s.tempC);
+                    out.writeLong(s.fetchedAt);
+                }
+
+                @NonNull
+                @Override
+                public Reading read(@NonNull DataInputStream in, int version) throws IOException {
+                    SavedLocation location = null;
+                    if (in.readBoolean()) {
+                        double lat = in.readDouble();
+                        double lon = in.readDouble();
+                        String label = in.readUTF();
+                        location = new SavedLocation(lat, lon, label.isEmpty() ? null : label);
+                    }
+                    double tempC = version >= 2 ? in.readDouble() : parseV1Line(in.readUTF());
+                    return new Reading(location, tempC, in.readLong());
+                }
+            },
+            new RecordStore.Migration<Reading>() {
+                @Override
+                public List<Reading> migrate(@NonNull SharedPreferences sp, @NonNull SharedPreferences.Editor ed) {
+                    long latBits = sp.getLong(KEY_SAVED_LAT_BITS, Long.MIN_VALUE);
+                    long lonBits = sp.getLong(KEY_SAVED_LON_BITS, Long.MIN_VALUE);
+                    SavedLocation location = null;
+                    if (latBits != Long.MIN_VALUE && lonBits != Long.MIN_VALUE) {
+                        location = new SavedLocation(Double.longBitsToDouble(latBits), Double.longBitsToDouble(lonBits),
+                                sp.getString(KEY_SAVED_LABEL, null));
+                    }
+                    String line = sp.getString(KEY_LAST_WEATHER_LINE, "");
+                    long ts = sp.getLong(KEY_LAST_WEATHER_TS, 0L);
+                    if (location == null && (line == null || line.isEmpty())) return null;
+
+                    ed.remove(KEY_SAVED_LAT_BITS).remove(KEY_SAVED_LON_BITS).remove(KEY_SAVED_LABEL)
+                            .remove(KEY_LAST_WEATHER_LINE).remove(KEY_LAST_WEATHER_TS);
+                    return Collections.singletonList(new Reading(location, parseV1Line(line), ts));
+                }
+            });
+
     public static final class SavedLocation {
         public final double lat;
         public final double lon;
@@ -51,6 +186,21 @@ public final class WeatherClient {
             this.lon = lon;
             this.label = label;
         }
+
+        // By value: every read of the store decodes fresh instances.
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SavedLocation)) return false;
+            SavedLocation other = (SavedLocation) o;
+            return Double.compare(lat, other.lat) == 0 && Double.compare(lon, other.lon) == 0
+                    && Objects.equals(label, other.label);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(lat, lon, label);
+        }
     }
 
     public interface LocationSearchCallback {
@@ -71,68 +221,217 @@ public final class WeatherClient {
 
     private WeatherClient() {}
 
+    /** Sends requests to other hosts, e.g. a local stand-in server; null restores the defaults. */
+    @VisibleForTesting
+    static void setBaseUrls(@Nullable String forecast, @Nullable String geocoding) {
+        forecastBase = forecast == null ? FORECAST_BASE : forecast;
+        geocodingBase = geocoding == null ? GEOCODING_BASE : geocoding;
+    }
+
+    /** Notified on the main thread when the saved location or the last reading changes. */
+    static void addListener(RecordStore.Listener listener) {
+        STORE.addListener(listener);
+    }
+
+    static void removeListener(RecordStore.Listener listener) {
+        STORE.removeListener(listener);
+    }
+
+    /** The saved location and last reading, from memory. */
+    @NonNull
+    public static Reading getReading(@NonNull Context context) {
+        return current(context);
+    }
+
+    /** Home page line, e.g. "Oslo • -3°C". */
+    @NonNull
+    public static String formatLine(@NonNull Reading reading) {
+        if (reading.location == null) return "Set location • --°C";
+        String label = reading.location.label;
+        label = (label == null || label.trim().isEmpty()) ? "Saved location" : label.trim();
+        if (!reading.hasTemperature()) return label + " • --°C";
+        return label + " • " + wholeDegrees(reading.tempC) + "°C";
+    }
+
+    /** Short form for the dashboard wallpaper, e.g. "-3°"; empty without a reading. */
+    @NonNull
+    public static String formatTemperature(@NonNull Reading reading) {
+        if (!reading.hasTemperature()) return "";
+        return wholeDegrees(reading.tempC) + "°";
+    }
+
+    // Shared by both formats so they never disagree; rounds -0.4 to 0 rather than "-0".
+    private static long wholeDegrees(double tempC) {
+        return Math.round(tempC);
+    }
+
     public static boolean hasSavedLocation(@NonNull Context context) {
         return getSavedLocation(context) != null;
     }
 
     public static void saveLocation(@NonNull Context context, @NonNull String label, double lat, double lon) {
-        SecurePrefs.get(context).edit()
-                .putLong(KEY_SAVED_LAT_BITS, Double.doubleToRawLongBits(lat))
-                .putLong(KEY_SAVED_LON_BITS, Double.doubleToRawLongBits(lon))
-                .putString(KEY_SAVED_LABEL, label)
-                // force refresh
-                .putLong(KEY_LAST_WEATHER_TS, 0L)
-                .putString(KEY_LAST_WEATHER_LINE, "")
-                .apply();
+        // A new location invalidates the last reading, which forces a refresh.
+        put(context, new Reading(new SavedLocation(lat, lon, label), Double.NaN, 0L));
     }
 
     @Nullable
     public static SavedLocation getSavedLocation(@NonNull Context context) {
-        long latBits = SecurePrefs.get(context).getLong(KEY_SAVED_LAT_BITS, Long.MIN_VALUE);
-        long lonBits = SecurePrefs.get(context).getLong(KEY_SAVED_LON_BITS, Long.MIN_VALUE);
-        if (latBits == Long.MIN_VALUE || lonBits == Long.MIN_VALUE) return null;
-        double lat = Double.longBitsToDouble(latBits);
-        double lon = Double.longBitsToDouble(lonBits);
-        String label = SecurePrefs.get(context).getString(KEY_SAVED_LABEL, null);
-        return new SavedLocation(lat, lon, label);
+        return current(context).location;
     }
 
+    /**
+     * Delivers the last reading if it is fresh enough. Otherwise interpolates a new one from the
+     * cached hourly forecast for the location's grid cell, and only goes to the network when that
+     * forecast is missing or ends within {@link #MIN_HORIZON_MS}. An interpolated reading is only
+     * stored when the shown temperature changes. After a failed fetch the running-out forecast is
+     * used for up to {@link #MIN_HORIZON_MS} before the network is tried again. Callers that arrive
+     * while a fetch for the same location is running join it instead of starting another; each
+     * callback fires exactly once.
+     */
     public static void refreshIfStale(@NonNull final Context context, long minIntervalMs, @NonNull final Callback cb) {
         final long now = System.currentTimeMillis();
-        long lastTs = SecurePrefs.get(context).getLong(KEY_LAST_WEATHER_TS, 0L);
-        String cached = SecurePrefs.get(context).getString(KEY_LAST_WEATHER_LINE, "--");
+        Reading state = current(context);
 
-        if ((now - lastTs) < minIntervalMs && cached != null && !cached.trim().isEmpty()) {
-            post(cb, new WeatherResult(true, cached));
+        if ((now - state.fetchedAt) < minIntervalMs && state.hasTemperature()) {
+            post(cb, new WeatherResult(true, state));
             return;
         }
 
+        Reading local = interpolate(context, state.location, now, MIN_HORIZON_MS);
+        if (local == null && state.location != null && recentlyFailed(state.location, now)) {
+            // Offline: keep answering from the forecast we have rather than retrying every refresh.
+            local = interpolate(context, state.location, now, 0L);
+        }
+        if (local != null) {
+            // Unchanged to the user means no store write (and no listener round) for this refresh.
+            if (!state.hasTemperature() || wholeDegrees(state.tempC) != wholeDegrees(local.tempC)) {
+                putIfLocation(context, state.location, local);
+            }
+            post(cb, new WeatherResult(true, local));
+            return;
+        }
+
+        final Pending p;
+        synchronized (PENDING_LOCK) {
+            // A fetch for a location that has since been replaced is not reused.
+            if (pending != null && Objects.equals(pending.location, state.location)) {
+                pending.callbacks.add(cb);
+                return;
+            }
+            p = new Pending(state.location);
+            p.callbacks.add(cb);
+            pending = p;
+        }
+
         new Thread(new Runnable() {
             @Override
             public void run() {
-                WeatherResult out = fetch(context);
-                if (out.ok) {
-                    SecurePrefs.get(context).edit()
-                            .putString(KEY_LAST_WEATHER_LINE, out.displayLine)
-                            .putLong(KEY_LAST_WEATHER_TS, System.currentTimeMillis())
-                            .apply();
+                WeatherResult out = fetch(context, p.location);
+                if (out.ok) putIfLocation(context, p.location, out.reading);
+
+                List<Callback> callbacks;
+                synchronized (PENDING_LOCK) {
+                    if (pending == p) pending = null;
+                    callbacks = new ArrayList<>(p.callbacks);
                 }
-                post(cb, out);
+                for (Callback c : callbacks) post(c, out);
             }
         }, "weather-refresh").start();
     }
 
+    /** Background refresh for callers that only need the stored reading updated. */
+    public static void refreshIfStale(@NonNull Context context, long minIntervalMs) {
+        refreshIfStale(context, minIntervalMs, new Callback() {
+            @Override
+            public void onResult(@NonNull WeatherResult result) {
+            }
+        });
+    }
+
+    @NonNull
+    private static Reading current(@NonNull Context context) {
+        List<Reading> list = STORE.list(context);
+        return list.isEmpty() ? EMPTY : list.get(0);
+    }
+
+    private static void put(@NonNull Context context, @NonNull Reading state) {
+        STORE.replaceAll(context, Collections.singletonList(state));
+    }
+
+    /** Stores a reading unless the saved location changed since it was computed. */
+    private static void putIfLocation(@NonNull Context context, @Nullable SavedLocation expected,
+                                      @NonNull Reading reading) {
+        synchronized (STORE) {
+            if (Objects.equals(current(context).location, expected)) put(context, reading);
+        }
+    }
+
     @NonNull
-    private static WeatherResult fetch(@NonNull Context context) {
-        SavedLocation saved = getSavedLocation(context);
-        if (saved == null) return new WeatherResult(false, "Set location • --°C");
+    private static WeatherResult fetch(@NonNull Context context, @Nullable SavedLocation saved) {
+        if (saved == null) return new WeatherResult(false, new Reading(null, Double.NaN, 0L));
+
+        int cellLat = HourlyForecast.cellOf(saved.lat);
+        int cellLon = HourlyForecast.cellOf(saved.lon);
+        HourlyForecast fetched = fetchForecast(cellLat, cellLon);
+        synchronized (PENDING_LOCK) {
+            failedCell = fetched == null ? cellKey(cellLat, cellLon) : Long.MIN_VALUE;
+            failedAt = System.currentTimeMillis();
+        }
+        if (fetched != null) storeForecast(context, fetched);
+
+        // Offline with a forecast that is running out still beats no reading.
+        Reading reading = interpolate(context, saved, System.currentTimeMillis(), 0L);
+        if (reading == null) return new WeatherResult(false, new Reading(saved, Double.NaN, 0L));
+        return new WeatherResult(true, reading);
+    }
+
+    /** Whether the last fetch for this location's cell failed within {@link #MIN_HORIZON_MS}. */
+    private static boolean recentlyFailed(@NonNull SavedLocation location, long now) {
+        long cell = cellKey(HourlyForecast.cellOf(location.lat), HourlyForecast.cellOf(location.lon));
+        synchronized (PENDING_LOCK) {
+            return failedCell == cell && now - failedAt < MIN_HORIZON_MS;
+        }
+    }
 
-        Double tempC = fetchTempC(saved.lat, saved.lon);
-        String label = (saved.label == null || saved.label.trim().isEmpty()) ? "Saved location" : saved.label.trim();
+    private static long cellKey(int cellLat, int cellLon) {
+        return ((long) cellLat << 32) | (cellLon & 0xFFFFFFFFL);
+    }
 
-        if (tempC == null) return new WeatherResult(false, label + " • --°C");
-        int rounded = (int) Math.round(tempC);
-        return new WeatherResult(true, label + " • " + rounded + "°C");
+    /**
+     * A reading from the cached forecast for {@code location}'s cell, or null if there is none
+     * that still reaches {@code minHorizonMs} past {@code now}.
+     */
+    @Nullable
+    private static Reading interpolate(@NonNull Context context, @Nullable SavedLocation location, long now,
+                                       long minHorizonMs) {
+        if (location == null) return null;
+        int cellLat = HourlyForecast.cellOf(location.lat);
+        int cellLon = HourlyForecast.cellOf(location.lon);
+        for (HourlyForecast f : FORECASTS.list(context)) {
+            if (!f.isCell(cellLat, cellLon)) continue;
+            if (f.endMs() - now < minHorizonMs) return null;
+            double t = f.tempAt(now);
+            return Double.isNaN(t) ? null : new Reading(location, t, now);
+        }
+        return null;
+    }
+
+    private static void storeForecast(@NonNull Context context, @NonNull HourlyForecast forecast) {
+        synchronized (FORECASTS) {
+            List<HourlyForecast> list = FORECASTS.list(context);
+            for (int i = list.size() - 1; i >= 0; i--) {
+                if (list.get(i).isCell(forecast.cellLat, forecast.cellLon)) list.remove(i);
+            }
+            list.add(0, forecast);
+            while (list.size() > MAX_FORECAST_CELLS) list.remove(list.size() - 1);
+            FORECASTS.replaceAll(context, list);
+        }
+    }
+
+    private static double parseV1Line(@Nullable String line) {
+        if (line == null) return Double.NaN;
+        Matcher m = V1_TEMP.matcher(line);
+        return m.find() ? Double.parseDouble(m.group(1)) : Double.NaN;
     }
 
     public static void searchBestMatch(@NonNull final Context context, @NonNull final String query, @NonNull final LocationSearchCallback cb) {
@@ -147,33 +446,20 @@ public final class WeatherClient {
 
     @NonNull
     private static LocationSearchResult geocodeBest(@NonNull String query) {
-        HttpURLConnection conn = null;
         try {
             String q = query.trim();
             if (q.isEmpty()) return new LocationSearchResult(false, null, "Enter a location");
 
             String lang = Locale.getDefault().getLanguage();
-            String url = "https://geocoding-api.open-meteo.com/v1/search?name="
+            String url = geocodingBase + "/v1/search?name="
                     + URLEncoder.encode(q, "UTF-8")
                     + "&count=1&language=" + URLEncoder.encode(lang, "UTF-8")
                     + "&format=json";
 
-            conn = (HttpURLConnection) new URL(url).openConnection();
-            conn.setConnectTimeout(7000);
-            conn.setReadTimeout(7000);
-            conn.setRequestMethod("GET");
-
-            int code = conn.getResponseCode();
-            InputStream is = code >= 200 && code < 300 ? conn.getInputStream() : conn.getErrorStream();
-            if (is == null) return new LocationSearchResult(false, null, "Search failed");
-
-            BufferedReader br = new BufferedReader(new InputStreamReader(is));
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null) sb.append(line);
-            br.close();
+            HttpClient.Response response = HttpClient.get(url).timeouts(7000, 7000).execute();
+            if (!response.isSuccessful()) return new LocationSearchResult(false, null, "Search failed");
 
-            JSONObject root = new JSONObject(sb.toString());
+            JSONObject root = new JSONObject(response.body);
             JSONArray results = root.optJSONArray("results");
             if (results == null || results.length() == 0) {
                 return new LocationSearchResult(false, null, "No matches found");
@@ -201,39 +487,22 @@ public final class WeatherClient {
             return new LocationSearchResult(true, new SavedLocation(lat, lon, finalLabel), null);
         } catch (Throwable t) {
             return new LocationSearchResult(false, null, "Search failed");
-        } finally {
-            if (conn != null) conn.disconnect();
         }
     }
 
+    /** Hourly temperatures for the center of a grid cell, or null if they could not be fetched. */
     @Nullable
-    private static Double fetchTempC(double lat, double lon) {
-        HttpURLConnection conn = null;
+    private static HourlyForecast fetchForecast(int cellLat, int cellLon) {
         try {
-            String url = "https://api.open-meteo.com/v1/forecast?latitude=" + lat + "&longitude=" + lon + "&current=temperature_2m&temperature_unit=celsius";
-            conn = (HttpURLConnection) new URL(url).openConnection();
-            conn.setConnectTimeout(6000);
-            conn.setReadTimeout(6000);
-            conn.setRequestMethod("GET");
-
-            int code = conn.getResponseCode();
-            InputStream is = code >= 200 && code < 300 ? conn.getInputStream() : conn.getErrorStream();
-            if (is == null) return null;
-            BufferedReader br = new BufferedReader(new InputStreamReader(is));
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null) sb.append(line);
-            br.close();
-
-            JSONObject root = new JSONObject(sb.toString());
-            JSONObject current = root.optJSONObject("current");
-            if (current == null) return null;
-            if (!current.has("temperature_2m")) return null;
-            return current.getDouble("temperature_2m");
+            String url = String.format(Locale.US,
+                    "%s/v1/forecast?latitude=%.1f&longitude=%.1f&hourly=temperature_2m&temperature_unit=celsius"
+                            + "&forecast_days=%d&timeformat=unixtime",
+                    forecastBase, HourlyForecast.degreesOf(cellLat), HourlyForecast.degreesOf(cellLon), FORECAST_DAYS);
+            HttpClient.Response response = HttpClient.get(url).timeouts(6000, 6000).execute();
+            if (!response.isSuccessful()) return null;
+            return HourlyForecast.parse(response.body, cellLat, cellLon, System.currentTimeMillis());
         } catch (Throwable t) {
             return null;
-        } finally {
-            if (conn != null) conn.disconnect();
         }
     }
 
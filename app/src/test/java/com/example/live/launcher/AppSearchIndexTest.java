@@ -0,0 +1,176 @@
+package com.example.live.launcher;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AppSearchIndexTest {
+
+    private static final LaunchHistoryStore.Ranker NO_HISTORY = new LaunchHistoryStore.Ranker() {
+        @Override
+        public float score(@NonNull String packageName) {
+            return 0f;
+        }
+    };
+
+    @Test
+    public void normalizeStripsLatinGreekAndCyrillicAccents() {
+        assertEquals("cafe deja vu", AppSearchIndex.normalize("Café  Déjà-Vu!", Locale.ROOT));
+        assertEquals("ωρα", AppSearchIndex.normalize("Ώρα", Locale.ROOT));
+        assertEquals("иоg", AppSearchIndex.normalize("Йоg", Locale.ROOT));
+    }
+
+    @Test
+    public void normalizeKeepsMarksThatSpellIndicWords() {
+        // Vowel signs, anusvara and virama are part of the word, not accents.
+        String hindi = AppSearchIndex.normalize("हिंदी", Locale.ROOT);
+        String hind = AppSearchIndex.normalize("हिंद", Locale.ROOT);
+        assertEquals("हिंदी", hindi);
+        assertNotEquals(hindi, hind);
+        assertEquals("தமிழ்", AppSearchIndex.normalize("தமிழ்", Locale.ROOT));
+        assertNotEquals(AppSearchIndex.normalize("กิน", Locale.ROOT), AppSearchIndex.normalize("กน", Locale.ROOT));
+    }
+
+    @Test
+    public void tiersRankPrefixBeforeWordBeforeInitialsBeforeSubstring() {
+        AppSearchIndex index = index("Maps Go", "Google Maps", "My Alarm", "Cinema");
+
+        assertEquals(Arrays.asList("Maps Go", "Google Maps", "My Alarm", "Cinema"),
+                labels(index, index.search("ma", NO_HISTORY)));
+        assertEquals(Arrays.asList("Google Maps"), labels(index, index.search("gm", NO_HISTORY)));
+    }
+
+    @Test
+    public void launchHistoryBreaksTiesInsideATier() {
+        AppSearchIndex index = index("Calculator", "Calendar", "Camera");
+        final Map<String, Float> scores = new HashMap<>();
+        scores.put(pkg("Camera"), 3f);
+        scores.put(pkg("Calendar"), 1f);
+
+        List<String> ranked = labels(index, index.search("ca", new LaunchHistoryStore.Ranker() {
+            @Override
+            public float score(@NonNull String packageName) {
+                Float s = scores.get(packageName);
+                return s == null ? 0f : s;
+            }
+        }));
+        assertEquals(Arrays.asList("Camera", "Calendar", "Calculator"), ranked);
+    }
+
+    @Test
+    public void typoTierFindsOneEditOnAWordPrefix() {
+        AppSearchIndex index = index("Calendar", "Camera", "Settings");
+
+        assertEquals(Arrays.asList("Calendar"), labels(index, index.search("calne", NO_HISTORY)));
+        assertEquals(Arrays.asList("Settings"), labels(index, index.search("setings", NO_HISTORY)));
+    }
+
+    @Test
+    public void narrowingFromManyExactHitsStillFindsTypos() {
+        List<String> names = new ArrayList<>();
+        for (int i = 1; i <= 9; i++) names.add("Note " + i);
+        names.add("Nodes");
+        AppSearchIndex index = index(names.toArray(new String[0]));
+
+        // "note" has enough exact hits to skip the typo tier, so "notes" must not narrow from them.
+        index.search("note", NO_HISTORY);
+        int[] narrowed = index.search("notes", NO_HISTORY);
+        index.search("", NO_HISTORY);
+        int[] fresh = index.search("notes", NO_HISTORY);
+
+        assertArrayEquals(fresh, narrowed);
+        assertTrue(labels(index, narrowed).contains("Nodes"));
+    }
+
+    @Test
+    public void narrowedQueriesMatchFreshOnes() {
+        AppSearchIndex index = index("Calculator", "Calendar", "Camera", "Call Log", "Clock", "Contacts",
+                "Google Calendar", "Cal Pal", "Chrome", "Calm");
+        String[] typed = {"c", "ca", "cal", "cale", "calen", "calend", "calenx", "calendar"};
+        for (String q : typed) {
+            int[] narrowed = index.search(q, NO_HISTORY);
+            AppSearchIndex fresh = index("Calculator", "Calendar", "Camera", "Call Log", "Clock", "Contacts",
+                    "Google Calendar", "Cal Pal", "Chrome", "Calm");
+            assertArrayEquals(q, fresh.search(q, NO_HISTORY), narrowed);
+        }
+    }
+
+    @Test
+    public void prefixEditDistanceCases() {
+        assertTrue(AppSearchIndex.prefixEditDistanceAtMostOne("maps", "maps"));
+        assertTrue(AppSearchIndex.prefixEditDistanceAtMostOne("mapx", "maps"));
+        assertTrue(AppSearchIndex.prefixEditDistanceAtMostOne("mps", "maps"));
+        assertTrue(AppSearchIndex.prefixEditDistanceAtMostOne("maaps", "maps"));
+        assertTrue(AppSearchIndex.prefixEditDistanceAtMostOne("xaps", "maps"));
+        assertTrue(AppSearchIndex.prefixEditDistanceAtMostOne("gogl", "google"));
+        assertFalse(AppSearchIndex.prefixEditDistanceAtMostOne("mpas", "maps"));
+        assertFalse(AppSearchIndex.prefixEditDistanceAtMostOne("", "maps"));
+        assertTrue(AppSearchIndex.prefixEditDistanceAtMostOne("a", ""));
+        assertFalse(AppSearchIndex.prefixEditDistanceAtMostOne("ab", ""));
+    }
+
+    @Test
+    public void prefixEditDistanceAgreesWithFullLevenshtein() {
+        Random random = new Random(7);
+        for (int round = 0; round < 20000; round++) {
+            String q = randomWord(random, 1 + random.nextInt(5));
+            String w = randomWord(random, random.nextInt(7));
+            boolean expected = false;
+            for (int end = 0; end <= w.length() && !expected; end++) {
+                expected = levenshtein(q, w.substring(0, end)) <= 1;
+            }
+            assertEquals(q + " / " + w, expected, AppSearchIndex.prefixEditDistanceAtMostOne(q, w));
+        }
+    }
+
+    private static AppSearchIndex index(String... labels) {
+        String[] sorted = labels.clone();
+        Arrays.sort(sorted, String.CASE_INSENSITIVE_ORDER);
+        List<AppInfo> apps = new ArrayList<>();
+        for (String label : sorted) apps.add(new AppInfo(pkg(label), "Main", label, 1L, 1L));
+        return AppSearchIndex.forCatalog(AppCatalog.of(apps));
+    }
+
+    private static String pkg(String label) {
+        return "test." + label.toLowerCase(Locale.ROOT).replace(' ', '_');
+    }
+
+    private static List<String> labels(AppSearchIndex index, int[] rows) {
+        List<String> out = new ArrayList<>(rows.length);
+        for (int row : rows) out.add(index.catalog().label(row));
+        return out;
+    }
+
+    private static String randomWord(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) sb.append((char) ('a' + random.nextInt(3)));
+        return sb.toString();
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) d[i][0] = i;
+        for (int j = 0; j <= b.length(); j++) d[0][j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(d[i - 1][j - 1] + cost, Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1));
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+}
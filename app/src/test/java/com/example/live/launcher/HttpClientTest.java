@@ -0,0 +1,146 @@
+package com.example.live.launcher;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link HttpClient} against a local stand-in server. The response cache is never installed
+ * here, so every call goes to the server.
+ */
+public class HttpClientTest {
+
+    private static final String BODY = "{\"hourly\":{\"time\":[0,3600],\"temperature_2m\":[12.5,13.0]}}";
+
+    private HttpServer server;
+    private String base;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/gzip", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = gzip(BODY.getBytes(StandardCharsets.UTF_8));
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                send(exchange, 200, body);
+            }
+        });
+        server.createContext("/plain", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, 200, BODY.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.createContext("/missing", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, 404, "no such place".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void gzipBodyIsInflated() throws IOException {
+        HttpClient.Response response = HttpClient.get(base + "/gzip").execute();
+
+        assertEquals(200, response.code);
+        assertTrue(response.isSuccessful());
+        assertEquals(BODY, response.body);
+    }
+
+    @Test
+    public void errorStatusReturnsErrorBody() throws IOException {
+        HttpClient.Response response = HttpClient.get(base + "/missing").execute();
+
+        assertEquals(404, response.code);
+        assertFalse(response.isSuccessful());
+        assertEquals("no such place", response.body);
+    }
+
+    @Test
+    public void callsAreRecorded() throws IOException {
+        long callsBefore = HttpClient.getTotalCalls();
+        long wireBefore = HttpClient.getTotalWireBytes();
+
+        HttpClient.get(base + "/gzip").execute();
+
+        HttpClient.CallStats stats = last(HttpClient.recentCalls());
+        int compressed = gzip(BODY.getBytes(StandardCharsets.UTF_8)).length;
+        assertEquals("127.0.0.1", stats.host);
+        assertEquals("/gzip", stats.path);
+        assertEquals(200, stats.code);
+        assertEquals(compressed, stats.wireBytes);
+        assertEquals(BODY.length(), stats.bodyBytes);
+        assertFalse(stats.fromCache);
+        assertTrue(stats.latencyMs >= 0);
+        assertEquals(callsBefore + 1, HttpClient.getTotalCalls());
+        assertEquals(wireBefore + compressed, HttpClient.getTotalWireBytes());
+    }
+
+    @Test
+    public void errorCallsAreRecorded() throws IOException {
+        HttpClient.get(base + "/missing").execute();
+
+        HttpClient.CallStats stats = last(HttpClient.recentCalls());
+        assertEquals("/missing", stats.path);
+        assertEquals(404, stats.code);
+        assertEquals("no such place".length(), stats.bodyBytes);
+    }
+
+    @Test
+    public void uncompressedBodyIsCountedAsIs() throws IOException {
+        HttpClient.get(base + "/plain").execute();
+
+        HttpClient.CallStats stats = last(HttpClient.recentCalls());
+        assertEquals(BODY.length(), stats.wireBytes);
+        assertEquals(BODY.length(), stats.bodyBytes);
+    }
+
+    private static HttpClient.CallStats last(List<HttpClient.CallStats> calls) {
+        assertFalse(calls.isEmpty());
+        return calls.get(calls.size() - 1);
+    }
+
+    private static void send(HttpExchange exchange, int code, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(code, body.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(body);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+}